@@ -0,0 +1,144 @@
+package com.example.api.client;
+
+import com.example.api.util.VirtualThreads;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.util.ReflectionUtils;
+
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to push a burst of concurrent password grants through {@link KeycloakTokenClient} against a
+ * token endpoint that answers after a fixed delay. {@code platform} models Tomcat's default
+ * 200-thread request pool; {@code virtual} runs one virtual thread per login (needs JDK 21+).
+ * {@code maxInFlight} pins the {@link KeycloakCallLimiter} login bulkhead and limit, and sizes the connection pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class KeycloakLoginConcurrencyBenchmark {
+
+    private static final int TOMCAT_MAX_THREADS = 200;
+    private static final String REALM = "benchmark";
+    private static final byte[] TOKEN_RESPONSE = ("{\"access_token\":\"a\",\"expires_in\":300,"
+            + "\"refresh_token\":\"r\",\"token_type\":\"Bearer\"}").getBytes(StandardCharsets.UTF_8);
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"200", "1000"})
+    public int maxInFlight;
+
+    @Param({"1000"})
+    public int logins;
+
+    @Param({"50"})
+    public int keycloakLatencyMs;
+
+    private HttpServer keycloak;
+    private ExecutorService keycloakThreads;
+    private ExecutorService requestThreads;
+    private KeycloakTokenClient tokenClient;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        keycloakThreads = Executors.newCachedThreadPool();
+        keycloak = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+        keycloak.setExecutor(keycloakThreads);
+        keycloak.createContext("/realms/" + REALM + "/protocol/openid-connect/token", exchange -> {
+            try {
+                Thread.sleep(keycloakLatencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, TOKEN_RESPONSE.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(TOKEN_RESPONSE);
+            }
+        });
+        keycloak.start();
+
+        KeycloakCallLimiter callLimiter = new KeycloakCallLimiter(new SimpleMeterRegistry());
+        set(callLimiter, "initialLimit", maxInFlight);
+        set(callLimiter, "minLimit", maxInFlight);
+        set(callLimiter, "maxInFlight", maxInFlight);
+        set(callLimiter, "loginMaxConcurrent", maxInFlight);
+        set(callLimiter, "loginAcquireTimeoutMs", 60_000L);
+        set(callLimiter, "refreshMaxConcurrent", 1);
+        set(callLimiter, "adminMaxConcurrent", 1);
+        set(callLimiter, "slidingWindowSize", 100);
+        set(callLimiter, "minimumNumberOfCalls", 100);
+        set(callLimiter, "failureRateThreshold", 50f);
+        set(callLimiter, "slowCallRateThreshold", 100f);
+        set(callLimiter, "slowCallDurationThresholdMs", 60_000L);
+        set(callLimiter, "waitDurationInOpenStateMs", 1000L);
+        set(callLimiter, "permittedCallsInHalfOpenState", 1);
+        callLimiter.init();
+
+        tokenClient = new KeycloakTokenClient(callLimiter);
+        set(tokenClient, "authServerUrl", "http://127.0.0.1:" + keycloak.getAddress().getPort());
+        set(tokenClient, "realm", REALM);
+        set(tokenClient, "clientId", "benchmark-client");
+        set(tokenClient, "clientSecret", "secret");
+        set(tokenClient, "maxConnections", maxInFlight);
+        set(tokenClient, "connectTimeoutMs", 2000);
+        set(tokenClient, "readTimeoutMs", 10_000);
+        set(tokenClient, "loginTimeoutMs", 10_000);
+        set(tokenClient, "refreshTimeoutMs", 10_000);
+        set(tokenClient, "poolAcquireTimeoutMs", 60_000);
+        set(tokenClient, "idleEvictionSeconds", 60L);
+        tokenClient.init();
+
+        requestThreads = "virtual".equals(threads)
+                ? VirtualThreads.newThreadPerTaskExecutor("login-")
+                : Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        requestThreads.shutdownNow();
+        tokenClient.close();
+        keycloak.stop(0);
+        keycloakThreads.shutdownNow();
+    }
+
+    @Benchmark
+    public int loginBurst() throws Exception {
+        List<Future<?>> pending = new ArrayList<>(logins);
+        for (int i = 0; i < logins; i++) {
+            String username = "user" + i;
+            pending.add(requestThreads.submit(() -> tokenClient.passwordGrant(username, "password")));
+        }
+        for (Future<?> login : pending) {
+            login.get();
+        }
+        return pending.size();
+    }
+
+    private static void set(Object target, String name, Object value) {
+        Field field = ReflectionUtils.findField(target.getClass(), name);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+}
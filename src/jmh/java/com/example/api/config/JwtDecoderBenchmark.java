@@ -0,0 +1,102 @@
+package com.example.api.config;
+
+import com.example.api.metrics.StageTimer;
+import com.example.api.security.CachingJwtDecoder;
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes an RS256 Keycloak access token through the same pipeline {@link JwtDecoderConfig} builds,
+ * with the realm key replaced by a locally generated RSA key. {@code verify} pays for the signature
+ * check and claim conversion on every call; {@code cachedDecode} is the repeat-token path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JwtDecoderBenchmark {
+
+    private JwtDecoder verifyingDecoder;
+    private CachingJwtDecoder cachingDecoder;
+    private String token;
+
+    @Setup
+    public void setUp() throws Exception {
+        RSAKey rsaKey = new RSAKeyGenerator(2048).keyID("kid-1").generate();
+        verifyingDecoder = JwtDecoderConfig.verifyingDecoder(new ImmutableJWKSet<>(new JWKSet(rsaKey.toPublicJWK())));
+        cachingDecoder = new CachingJwtDecoder(
+                JwtDecoderConfig.verifyingDecoder(new ImmutableJWKSet<>(new JWKSet(rsaKey.toPublicJWK()))),
+                1000, Duration.ofMinutes(5), new SimpleMeterRegistry(), new StageTimer(new SimpleMeterRegistry()));
+        token = signedKeycloakAccessToken(rsaKey);
+        cachingDecoder.decode(token);
+    }
+
+    @Benchmark
+    public Jwt verify() {
+        return verifyingDecoder.decode(token);
+    }
+
+    @Benchmark
+    public Jwt cachedDecode() {
+        return cachingDecoder.decode(token);
+    }
+
+    static String signedKeycloakAccessToken(RSAKey rsaKey) throws Exception {
+        Instant now = Instant.now();
+        String resourceId = KeycloakJwtConverterBenchmark.RESOURCE_ID;
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .jwtID(UUID.randomUUID().toString())
+                .issuer("http://localhost:8180/auth/realms/spring-boot-api-realm")
+                .subject("8f14e45f-ceea-467f-a8f3-6c1b1e7ec4c7")
+                .audience("account")
+                .issueTime(Date.from(now))
+                .expirationTime(Date.from(now.plus(Duration.ofHours(1))))
+                .claim("typ", "Bearer")
+                .claim("azp", resourceId)
+                .claim("session_state", UUID.randomUUID().toString())
+                .claim("scope", "openid profile email")
+                .claim("email_verified", true)
+                .claim("name", "Jane Doe")
+                .claim("preferred_username", "jane.doe")
+                .claim("given_name", "Jane")
+                .claim("family_name", "Doe")
+                .claim("email", "jane.doe@example.com")
+                .claim("realm_access", Map.of("roles", List.of("default-roles-spring-boot-api-realm",
+                        "offline_access", "uma_authorization", "user")))
+                .claim("resource_access", Map.of(
+                        resourceId, Map.of("roles", List.of("user", "reporting")),
+                        "account", Map.of("roles", List.of("manage-account", "view-profile"))))
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256)
+                .keyID(rsaKey.getKeyID())
+                .type(JOSEObjectType.JWT)
+                .build(), claims);
+        jwt.sign(new RSASSASigner(rsaKey));
+        return jwt.serialize();
+    }
+}
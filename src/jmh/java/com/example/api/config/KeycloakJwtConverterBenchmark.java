@@ -0,0 +1,119 @@
+package com.example.api.config;
+
+import com.example.api.security.RoleBitRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compares {@link KeycloakJwtConverter} against the stream-based implementation it replaced.
+ * Run with {@code ./gradlew jmh}; the gc profiler reports {@code gc.alloc.rate.norm} (bytes per call).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class KeycloakJwtConverterBenchmark {
+
+    static final String RESOURCE_ID = "spring-boot-api-client";
+
+    private KeycloakJwtConverter converter;
+    private LegacyConverter legacyConverter;
+    private Jwt jwt;
+
+    @Setup
+    public void setUp() {
+        RoleBitRegistry roleBitRegistry = new RoleBitRegistry();
+        roleBitRegistry.register("user");
+        roleBitRegistry.register("admin");
+        converter = new KeycloakJwtConverter(RESOURCE_ID, "preferred_username", roleBitRegistry);
+        legacyConverter = new LegacyConverter();
+        jwt = keycloakAccessToken();
+    }
+
+    @Benchmark
+    public AbstractAuthenticationToken interned() {
+        return converter.convert(jwt);
+    }
+
+    @Benchmark
+    public AbstractAuthenticationToken legacy() {
+        return legacyConverter.convert(jwt);
+    }
+
+    static Jwt keycloakAccessToken() {
+        Instant now = Instant.now();
+        return Jwt.withTokenValue("token")
+                .header("alg", "RS256")
+                .header("kid", "kid-1")
+                .issuer("http://localhost:8180/auth/realms/spring-boot-api-realm")
+                .subject("8f14e45f-ceea-467f-a8f3-6c1b1e7ec4c7")
+                .audience(List.of("account"))
+                .issuedAt(now)
+                .expiresAt(now.plusSeconds(300))
+                .claim("typ", "Bearer")
+                .claim("azp", RESOURCE_ID)
+                .claim("scope", "openid profile email")
+                .claim("preferred_username", "jane.doe")
+                .claim("email", "jane.doe@example.com")
+                .claim("realm_access", Map.of("roles", List.of("default-roles-spring-boot-api-realm",
+                        "offline_access", "uma_authorization", "user")))
+                .claim("resource_access", Map.of(
+                        RESOURCE_ID, Map.of("roles", List.of("user", "reporting")),
+                        "account", Map.of("roles", List.of("manage-account", "view-profile"))))
+                .build();
+    }
+
+    /**
+     * The converter as it was before authority interning.
+     */
+    static class LegacyConverter {
+
+        private final JwtGrantedAuthoritiesConverter defaultGrantedAuthoritiesConverter = new JwtGrantedAuthoritiesConverter();
+
+        AbstractAuthenticationToken convert(Jwt jwt) {
+            Collection<GrantedAuthority> authorities = Stream.concat(
+                    defaultGrantedAuthoritiesConverter.convert(jwt).stream(),
+                    extractResourceRoles(jwt).stream()
+            ).collect(Collectors.toSet());
+            return new JwtAuthenticationToken(jwt, authorities, jwt.getClaim("preferred_username"));
+        }
+
+        @SuppressWarnings("unchecked")
+        private Collection<? extends GrantedAuthority> extractResourceRoles(Jwt jwt) {
+            Map<String, Object> resourceAccess = jwt.getClaim("resource_access");
+            if (resourceAccess == null) {
+                return Set.of();
+            }
+            Map<String, Object> resource = (Map<String, Object>) resourceAccess.get(RESOURCE_ID);
+            if (resource == null) {
+                return Set.of();
+            }
+            Collection<String> roles = (Collection<String>) resource.get("roles");
+            if (roles == null) {
+                return Set.of();
+            }
+            return roles.stream()
+                    .map(role -> new SimpleGrantedAuthority("ROLE_" + role))
+                    .collect(Collectors.toSet());
+        }
+    }
+}
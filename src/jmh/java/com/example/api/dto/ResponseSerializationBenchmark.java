@@ -0,0 +1,76 @@
+package com.example.api.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes the auth responses with an {@link ObjectMapper} configured the way Spring Boot
+ * configures the one used by the HTTP message converters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ResponseSerializationBenchmark {
+
+    private ObjectWriter authResponseWriter;
+    private ObjectWriter profileWriter;
+    private AuthResponse authResponse;
+    private UserProfileResponse profile;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        authResponseWriter = objectMapper.writerFor(AuthResponse.class);
+        profileWriter = objectMapper.writerFor(UserProfileResponse.class);
+
+        authResponse = AuthResponse.builder()
+                .accessToken(token(1100))
+                .refreshToken(token(650))
+                .tokenType("Bearer")
+                .expiresIn(300)
+                .userId("65f2c3a1e4b0a7d9c8f01234")
+                .username("jane.doe")
+                .build();
+        profile = UserProfileResponse.builder()
+                .id("65f2c3a1e4b0a7d9c8f01234")
+                .username("jane.doe")
+                .email("jane.doe@example.com")
+                .firstName("Jane")
+                .lastName("Doe")
+                .createdAt(LocalDateTime.of(2024, 3, 14, 9, 26, 53))
+                .build();
+    }
+
+    @Benchmark
+    public byte[] authResponse() throws Exception {
+        return authResponseWriter.writeValueAsBytes(authResponse);
+    }
+
+    @Benchmark
+    public byte[] userProfileResponse() throws Exception {
+        return profileWriter.writeValueAsBytes(profile);
+    }
+
+    // Keycloak access and refresh tokens are base64url JWTs of roughly this length
+    private static String token(int length) {
+        StringBuilder token = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            token.append((char) ('a' + i % 26));
+        }
+        return token.toString();
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.api.exception;
+
+import com.example.api.dto.UserRegistrationRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.FieldError;
+import org.springframework.web.bind.MethodArgumentNotValidException;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the error path: creating the exception, counting it and building the error response.
+ * Handler logging is switched off in the jmh logback configuration so console output is not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GlobalExceptionHandlerBenchmark {
+
+    private GlobalExceptionHandler handler;
+    private WebRequest request;
+    private MethodParameter registerParameter;
+
+    @Setup
+    public void setUp() throws Exception {
+        FailureLog failureLog = new FailureLog(new SimpleMeterRegistry());
+        failureLog.init();
+        handler = new GlobalExceptionHandler(failureLog);
+        request = new ServletWebRequest(new MockHttpServletRequest("POST", "/api/auth/register"));
+        registerParameter = new MethodParameter(
+                GlobalExceptionHandlerBenchmark.class.getDeclaredMethod("register", UserRegistrationRequest.class), 0);
+    }
+
+    @Benchmark
+    public ResponseEntity<GlobalExceptionHandler.ErrorResponse> resourceNotFound() {
+        return handler.handleResourceNotFoundException(
+                new ResourceNotFoundException("User not found with id: 65f2c3a1e4b0a7d9c8f01234"), request);
+    }
+
+    @Benchmark
+    public ResponseEntity<GlobalExceptionHandler.ErrorResponse> authenticationFailure() {
+        return handler.handleAuthenticationException(
+                new AuthenticationException("Invalid username or password"), request);
+    }
+
+    @Benchmark
+    public ResponseEntity<GlobalExceptionHandler.ValidationErrorResponse> validationFailure() {
+        UserRegistrationRequest target = new UserRegistrationRequest();
+        BeanPropertyBindingResult bindingResult = new BeanPropertyBindingResult(target, "userRegistrationRequest");
+        bindingResult.addError(new FieldError("userRegistrationRequest", "email", "Email should be valid"));
+        bindingResult.addError(new FieldError("userRegistrationRequest", "password", "Password must be between 8 and 100 characters"));
+        bindingResult.addError(new FieldError("userRegistrationRequest", "firstName", "First name is required"));
+        return handler.handleValidationExceptions(
+                new MethodArgumentNotValidException(registerParameter, bindingResult), request);
+    }
+
+    @SuppressWarnings("unused")
+    private void register(UserRegistrationRequest request) {
+    }
+}
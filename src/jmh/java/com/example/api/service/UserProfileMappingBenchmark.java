@@ -0,0 +1,34 @@
+package com.example.api.service;
+
+import com.example.api.dto.UserProfileResponse;
+import com.example.api.model.UserProfileView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class UserProfileMappingBenchmark {
+
+    private UserProfileView profile;
+
+    @Setup
+    public void setUp() {
+        LocalDateTime createdAt = LocalDateTime.of(2024, 3, 14, 9, 26, 53);
+        profile = new UserProfileView("65f2c3a1e4b0a7d9c8f01234", "jane.doe", "jane.doe@example.com",
+                "Jane", "Doe", createdAt, createdAt);
+    }
+
+    @Benchmark
+    public UserProfileResponse mapToUserProfileResponse() {
+        return UserService.mapToUserProfileResponse(profile);
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.api.loadtest;
+
+import com.example.api.model.User;
+import com.example.api.repository.UserRepository;
+import com.example.api.service.UserAvailabilityIndex;
+import com.example.api.service.UserCacheEvictor;
+import com.example.api.service.UserChangeStreamWatcher;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Checks {@link UserChangeStreamWatcher} against a real replica set, the way another node's writes
+ * would reach it: updates must evict the user, deletes must evict it by id without clearing the
+ * caches, a change written while the watcher is stopped must be replayed from its resume token, and
+ * the cache TTLs must be capped whenever the stream is down.
+ * <p>
+ * Needs {@code MONGODB_URI} to point at a replica set, e.g. the single-node one in
+ * {@code docker-compose.yml}. It works in its own database, which it drops when done. Exits with
+ * status 1 if any check fails.
+ */
+public class CacheCoherenceCheck {
+
+    private static final String DATABASE = "cache_coherence_check";
+    private static final long TIMEOUT_MS = 10_000;
+
+    private final RecordingEvictor evictor = new RecordingEvictor();
+    private final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        String uri = System.getenv().getOrDefault("MONGODB_URI", "mongodb://localhost:27017");
+        List<String> failures;
+        try (MongoClient client = MongoClients.create(uri)) {
+            MongoTemplate mongoTemplate = new MongoTemplate(client, DATABASE);
+            mongoTemplate.getDb().drop();
+            try {
+                failures = new CacheCoherenceCheck().run(mongoTemplate);
+            } finally {
+                mongoTemplate.getDb().drop();
+            }
+        }
+        if (!failures.isEmpty()) {
+            System.out.println();
+            failures.forEach(failure -> System.out.println("FAILED " + failure));
+            System.exit(1);
+        }
+    }
+
+    List<String> run(MongoTemplate mongoTemplate) throws Exception {
+        User user = mongoTemplate.insert(User.builder()
+                .username("coherence-user")
+                .email("coherence-user@example.com")
+                .firstName("Cache")
+                .lastName("Check")
+                .keycloakId(UUID.randomUUID().toString())
+                .createdAt(LocalDateTime.now())
+                .updatedAt(LocalDateTime.now())
+                .build());
+
+        UserRepository repository = new MongoRepositoryFactory(mongoTemplate).getRepository(UserRepository.class);
+        UserChangeStreamWatcher watcher = new UserChangeStreamWatcher(mongoTemplate, List.of(evictor),
+                new UserAvailabilityIndex(repository, new SimpleMeterRegistry()), new SimpleMeterRegistry());
+        setField(watcher, "fallbackTtlSeconds", 30L);
+        setField(watcher, "retryIntervalMs", 500L);
+        setField(watcher, "maxAwaitMs", 200L);
+
+        watcher.start();
+        try {
+            check("TTL is capped until the stream opens", () -> Duration.ofSeconds(30).equals(evictor.ttlCap), 0);
+            if (!check("stream opens", watcher::isStreaming, TIMEOUT_MS)) {
+                return failures;
+            }
+            check("TTL cap is lifted once streaming", () -> evictor.ttlCap == null, TIMEOUT_MS);
+
+            update(mongoTemplate, user, "Updated");
+            check("update evicts the user", () -> evictor.awaitEviction(user.getKeycloakId()), 0);
+
+            // A write while the watcher is down must be delivered when it resumes
+            watcher.stop();
+            check("TTL is capped while stopped", () -> Duration.ofSeconds(30).equals(evictor.ttlCap), 0);
+            update(mongoTemplate, user, "WhileStopped");
+            int clearsBeforeResume = evictor.clears;
+            watcher.start();
+            check("change made while stopped is replayed", () -> evictor.awaitEviction(user.getKeycloakId()), 0);
+            check("resuming does not clear the caches", () -> evictor.clears == clearsBeforeResume, 0);
+
+            int clearsBeforeDelete = evictor.clears;
+            mongoTemplate.remove(Query.query(Criteria.where("_id").is(user.getId())), User.class);
+            check("delete evicts the user by id", () -> evictor.evictedUserIds.contains(user.getId()), TIMEOUT_MS);
+            check("delete does not clear the caches", () -> evictor.clears == clearsBeforeDelete, 0);
+        } finally {
+            watcher.stop();
+        }
+        return failures;
+    }
+
+    private boolean check(String name, BooleanSupplier condition, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        boolean passed = condition.getAsBoolean();
+        while (!passed && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            passed = condition.getAsBoolean();
+        }
+        System.out.println((passed ? "PASS  " : "FAIL  ") + name);
+        if (!passed) {
+            failures.add(name);
+        }
+        return passed;
+    }
+
+    private static void update(MongoTemplate mongoTemplate, User user, String firstName) {
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(user.getId())),
+                Update.update("firstName", firstName).set("updatedAt", LocalDateTime.now()), User.class);
+    }
+
+    private static void setField(Object target, String name, Object value) {
+        Field field = ReflectionUtils.findField(target.getClass(), name);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+
+    private static class RecordingEvictor implements UserCacheEvictor {
+
+        final BlockingQueue<String> evictedKeycloakIds = new LinkedBlockingQueue<>();
+        final Set<String> evictedUserIds = ConcurrentHashMap.newKeySet();
+        volatile int clears;
+        volatile Duration ttlCap;
+
+        @Override
+        public void evictUser(User user) {
+            evictedKeycloakIds.add(String.valueOf(user.getKeycloakId()));
+        }
+
+        @Override
+        public void evictUserById(String userId) {
+            evictedUserIds.add(userId);
+        }
+
+        @Override
+        public synchronized void evictAllUsers() {
+            clears++;
+        }
+
+        @Override
+        public void capTtl(Duration ttl) {
+            ttlCap = ttl;
+        }
+
+        boolean awaitEviction(String keycloakId) {
+            try {
+                String evicted;
+                while ((evicted = evictedKeycloakIds.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS)) != null) {
+                    if (evicted.equals(keycloakId)) {
+                        return true;
+                    }
+                }
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
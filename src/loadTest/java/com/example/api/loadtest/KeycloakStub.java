@@ -0,0 +1,432 @@
+package com.example.api.loadtest;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * In-process stand-in for the parts of Keycloak the application talks to: the OIDC token endpoint
+ * (password and refresh grants, for the application realm and the master-realm admin client), the
+ * realm JWK set, user listing, search, lookup, creation and deletion, realm roles and realm role
+ * mappings.
+ * <p>
+ * Access tokens are real RS256 JWTs signed with a key published on the certs endpoint, so the
+ * application verifies them exactly as it would Keycloak's. Token and admin calls can be slowed
+ * down and made to fail with a 503 to see how the service behaves when Keycloak degrades.
+ */
+public class KeycloakStub implements AutoCloseable {
+
+    private static final Pattern TOKEN = Pattern.compile("/auth/realms/([^/]+)/protocol/openid-connect/token");
+    private static final Pattern CERTS = Pattern.compile("/auth/realms/([^/]+)/protocol/openid-connect/certs");
+    private static final Pattern USERS = Pattern.compile("/auth/admin/realms/([^/]+)/users");
+    private static final Pattern USER = Pattern.compile("/auth/admin/realms/([^/]+)/users/([^/]+)");
+    private static final Pattern ROLE_MAPPINGS = Pattern.compile("/auth/admin/realms/([^/]+)/users/([^/]+)/role-mappings/realm");
+    private static final Pattern ROLES = Pattern.compile("/auth/admin/realms/([^/]+)/roles");
+    private static final String ADMIN_REALM = "master";
+    private static final List<String> REALM_ROLES = List.of("user", "admin", "offline_access", "uma_authorization");
+
+    private final String realm;
+    private final String clientId;
+    private final Duration tokenTtl;
+    private final Fault tokenFault;
+    private final Fault adminFault;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final RSAKey signingKey;
+    private final JWSSigner signer;
+    private final Map<String, StubUser> usersById = new ConcurrentHashMap<>();
+    // Sorted, so users are listed in Keycloak's order
+    private final Map<String, StubUser> usersByUsername = new ConcurrentSkipListMap<>();
+    private final Map<String, StubUser> usersByEmail = new ConcurrentHashMap<>();
+    private final Map<String, String> refreshTokens = new ConcurrentHashMap<>();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public KeycloakStub(String realm, String clientId, Duration tokenTtl, Fault tokenFault, Fault adminFault) throws JOSEException {
+        this.realm = realm;
+        this.clientId = clientId;
+        this.tokenTtl = tokenTtl;
+        this.tokenFault = tokenFault;
+        this.adminFault = adminFault;
+        this.signingKey = new RSAKeyGenerator(2048).keyID(UUID.randomUUID().toString()).generate();
+        this.signer = new RSASSASigner(signingKey);
+    }
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        // Unbounded, so injected latency delays requests instead of queueing them behind each other
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "keycloak-stub");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/auth/", this::handle);
+        server.start();
+    }
+
+    /**
+     * @return the value for {@code keycloak.auth-server-url}
+     */
+    public String authServerUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/auth";
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            Matcher matcher;
+            if ((matcher = TOKEN.matcher(path)).matches() && "POST".equals(method)) {
+                if (tokenFault.inject(exchange)) {
+                    token(exchange, matcher.group(1));
+                }
+            } else if ((matcher = CERTS.matcher(path)).matches() && realm.equals(matcher.group(1))) {
+                sendJson(exchange, 200, new JWKSet(signingKey.toPublicJWK()).toJSONObject());
+            } else if (path.startsWith("/auth/admin/")) {
+                if (exchange.getRequestHeaders().getFirst("Authorization") == null) {
+                    sendJson(exchange, 401, Map.of("error", "HTTP 401 Unauthorized"));
+                } else if (adminFault.inject(exchange)) {
+                    admin(exchange, path, method);
+                }
+            } else {
+                sendJson(exchange, 404, Map.of("error", "Not found"));
+            }
+        } catch (Exception e) {
+            sendJson(exchange, 500, Map.of("error", String.valueOf(e.getMessage())));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void admin(HttpExchange exchange, String path, String method) throws IOException {
+        Matcher matcher;
+        if ((matcher = USERS.matcher(path)).matches() && realm.equals(matcher.group(1))) {
+            if ("GET".equals(method)) {
+                searchUsers(exchange);
+            } else {
+                createUser(exchange);
+            }
+        } else if ((matcher = ROLE_MAPPINGS.matcher(path)).matches() && realm.equals(matcher.group(1))) {
+            addRealmRoles(exchange, matcher.group(2));
+        } else if ((matcher = USER.matcher(path)).matches() && realm.equals(matcher.group(1))) {
+            if ("DELETE".equals(method)) {
+                deleteUser(exchange, matcher.group(2));
+            } else {
+                getUser(exchange, matcher.group(2));
+            }
+        } else if ((matcher = ROLES.matcher(path)).matches() && realm.equals(matcher.group(1))) {
+            sendJson(exchange, 200, REALM_ROLES.stream().map(this::role).collect(Collectors.toList()));
+        } else {
+            sendJson(exchange, 404, Map.of("error", "Not found"));
+        }
+    }
+
+    private void token(HttpExchange exchange, String tokenRealm) throws IOException, JOSEException {
+        Map<String, String> form = parseForm(exchange.getRequestBody());
+        String grantType = form.getOrDefault("grant_type", "");
+
+        StubUser user = null;
+        if (ADMIN_REALM.equals(tokenRealm)) {
+            // Any credentials are accepted for the master-realm admin client
+            user = new StubUser("admin", "admin", null, null, null, null);
+        } else if (realm.equals(tokenRealm) && "password".equals(grantType)) {
+            StubUser candidate = usersByUsername.get(lower(form.get("username")));
+            if (candidate != null && candidate.password.equals(form.get("password"))) {
+                user = candidate;
+            }
+        } else if (realm.equals(tokenRealm) && "refresh_token".equals(grantType)) {
+            String userId = refreshTokens.get(form.getOrDefault("refresh_token", ""));
+            user = userId != null ? usersById.get(userId) : null;
+        }
+        if (user == null) {
+            sendJson(exchange, 401, Map.of("error", "invalid_grant", "error_description", "Invalid user credentials"));
+            return;
+        }
+
+        String refreshToken = UUID.randomUUID().toString();
+        refreshTokens.put(refreshToken, user.id);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("access_token", accessToken(tokenRealm, form.getOrDefault("client_id", clientId), user));
+        response.put("expires_in", tokenTtl.getSeconds());
+        response.put("refresh_expires_in", tokenTtl.getSeconds() * 6);
+        response.put("refresh_token", refreshToken);
+        response.put("token_type", "Bearer");
+        response.put("not-before-policy", 0);
+        response.put("session_state", UUID.randomUUID().toString());
+        response.put("scope", "profile email");
+        sendJson(exchange, 200, response);
+    }
+
+    private String accessToken(String tokenRealm, String azp, StubUser user) throws JOSEException {
+        Instant now = Instant.now();
+        List<String> roles = List.copyOf(user.realmRoles);
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .jwtID(UUID.randomUUID().toString())
+                .issuer(authServerUrl() + "/realms/" + tokenRealm)
+                .subject(user.id)
+                .audience("account")
+                .issueTime(Date.from(now))
+                .expirationTime(Date.from(now.plus(tokenTtl)))
+                .claim("typ", "Bearer")
+                .claim("azp", azp)
+                .claim("scope", "profile email")
+                .claim("email_verified", true)
+                .claim("preferred_username", user.username)
+                .claim("email", user.email)
+                .claim("given_name", user.firstName)
+                .claim("family_name", user.lastName)
+                .claim("realm_access", Map.of("roles", roles))
+                .claim("resource_access", Map.of(clientId, Map.of("roles", roles)))
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256)
+                .keyID(signingKey.getKeyID())
+                .type(JOSEObjectType.JWT)
+                .build(), claims);
+        jwt.sign(signer);
+        return jwt.serialize();
+    }
+
+    private void searchUsers(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        // The application only searches with exact=true
+        StubUser match = null;
+        if (query.containsKey("username")) {
+            match = usersByUsername.get(lower(query.get("username")));
+        } else if (query.containsKey("email")) {
+            match = usersByEmail.get(lower(query.get("email")));
+        } else {
+            // A page of all users
+            int first = Integer.parseInt(query.getOrDefault("first", "0"));
+            int max = Integer.parseInt(query.getOrDefault("max", "100"));
+            sendJson(exchange, 200, usersByUsername.values().stream()
+                    .skip(first)
+                    .limit(max)
+                    .map(StubUser::toRepresentation)
+                    .collect(Collectors.toList()));
+            return;
+        }
+        sendJson(exchange, 200, match == null ? List.of() : List.of(match.toRepresentation()));
+    }
+
+    private void getUser(HttpExchange exchange, String userId) throws IOException {
+        StubUser user = usersById.get(userId);
+        if (user == null) {
+            sendJson(exchange, 404, Map.of("error", "User not found"));
+            return;
+        }
+        sendJson(exchange, 200, user.toRepresentation());
+    }
+
+    private void deleteUser(HttpExchange exchange, String userId) throws IOException {
+        StubUser user = usersById.remove(userId);
+        if (user == null) {
+            sendJson(exchange, 404, Map.of("error", "User not found"));
+            return;
+        }
+        usersByUsername.remove(lower(user.username));
+        if (user.email != null) {
+            usersByEmail.remove(lower(user.email));
+        }
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    private void createUser(HttpExchange exchange) throws IOException {
+        Map<String, Object> representation = objectMapper.readValue(exchange.getRequestBody(), new TypeReference<>() {});
+        List<?> credentials = (List<?>) representation.getOrDefault("credentials", List.of());
+        String password = credentials.isEmpty() ? "" : String.valueOf(((Map<?, ?>) credentials.get(0)).get("value"));
+        StubUser user = new StubUser(UUID.randomUUID().toString(),
+                (String) representation.get("username"), (String) representation.get("email"),
+                (String) representation.get("firstName"), (String) representation.get("lastName"), password);
+
+        if (usersByUsername.putIfAbsent(lower(user.username), user) != null) {
+            sendJson(exchange, 409, Map.of("errorMessage", "User exists with same username"));
+            return;
+        }
+        if (user.email != null && usersByEmail.putIfAbsent(lower(user.email), user) != null) {
+            usersByUsername.remove(lower(user.username));
+            sendJson(exchange, 409, Map.of("errorMessage", "User exists with same email"));
+            return;
+        }
+        usersById.put(user.id, user);
+        exchange.getResponseHeaders().add("Location",
+                authServerUrl() + "/admin/realms/" + realm + "/users/" + user.id);
+        exchange.sendResponseHeaders(201, -1);
+    }
+
+    private void addRealmRoles(HttpExchange exchange, String userId) throws IOException {
+        StubUser user = usersById.get(userId);
+        if (user == null) {
+            sendJson(exchange, 404, Map.of("error", "User not found"));
+            return;
+        }
+        List<Map<String, Object>> roles = objectMapper.readValue(exchange.getRequestBody(), new TypeReference<>() {});
+        roles.forEach(role -> user.realmRoles.add((String) role.get("name")));
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    private Map<String, Object> role(String name) {
+        Map<String, Object> role = new LinkedHashMap<>();
+        role.put("id", UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)).toString());
+        role.put("name", name);
+        role.put("composite", false);
+        role.put("clientRole", false);
+        role.put("containerId", realm);
+        return role;
+    }
+
+    private void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseForm(InputStream body) throws IOException {
+        return parseQuery(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, String> parseQuery(String raw) {
+        Map<String, String> values = new HashMap<>();
+        if (raw == null || raw.isEmpty()) {
+            return values;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            values.put(key, value);
+        }
+        return values;
+    }
+
+    private static String lower(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Latency and error injection for one group of endpoints.
+     */
+    public static class Fault {
+
+        private final long latencyMs;
+        private final long jitterMs;
+        private final double errorRate;
+
+        public Fault(long latencyMs, long jitterMs, double errorRate) {
+            this.latencyMs = latencyMs;
+            this.jitterMs = jitterMs;
+            this.errorRate = errorRate;
+        }
+
+        /**
+         * Sleeps for the configured latency and, for the configured share of requests, answers 503.
+         *
+         * @return whether the request should still be handled
+         */
+        boolean inject(HttpExchange exchange) throws IOException {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long delay = latencyMs + (jitterMs > 0 ? random.nextLong(jitterMs + 1) : 0);
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (errorRate > 0 && random.nextDouble() < errorRate) {
+                exchange.getRequestBody().readAllBytes();
+                exchange.sendResponseHeaders(503, -1);
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return latencyMs + "ms (+" + jitterMs + "ms jitter), " + errorRate * 100 + "% errors";
+        }
+    }
+
+    private static class StubUser {
+
+        final String id;
+        final String username;
+        final String email;
+        final String firstName;
+        final String lastName;
+        final String password;
+        final long createdTimestamp = System.currentTimeMillis();
+        final Set<String> realmRoles = ConcurrentHashMap.newKeySet();
+
+        StubUser(String id, String username, String email, String firstName, String lastName, String password) {
+            this.id = id;
+            this.username = username;
+            this.email = email;
+            this.firstName = firstName;
+            this.lastName = lastName;
+            this.password = password;
+        }
+
+        Map<String, Object> toRepresentation() {
+            Map<String, Object> representation = new LinkedHashMap<>();
+            representation.put("id", id);
+            representation.put("username", username);
+            representation.put("email", email);
+            representation.put("firstName", firstName);
+            representation.put("lastName", lastName);
+            representation.put("enabled", true);
+            representation.put("createdTimestamp", createdTimestamp);
+            representation.put("emailVerified", true);
+            return representation;
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package com.example.api.loadtest;
+
+import com.example.api.SpringBootKeycloakApiApplication;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * Offline load test. Starts the full application against a {@link KeycloakStub} and an in-memory
+ * MongoDB, then drives the auth endpoints in phases (register, login, refresh, profile) at a fixed
+ * concurrency and reports latency percentiles and throughput for each.
+ * <p>
+ * Everything runs in one JVM, so the stand-ins compete with the application for CPU; compare runs
+ * with each other rather than with production numbers. Settings are {@code loadtest.*} system
+ * properties, see {@link Settings}.
+ */
+public class LoadTest {
+
+    private static final String REALM = "spring-boot-api-realm";
+    private static final String CLIENT_ID = "spring-boot-api-client";
+    private static final String PASSWORD = "LoadTest-Passw0rd";
+
+    private final Settings settings;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient;
+    private final ExecutorService workers;
+    private String baseUrl;
+
+    private Session[] registered;
+    private List<Session> sessions;
+
+    LoadTest(Settings settings) {
+        this.settings = settings;
+        this.workers = Executors.newFixedThreadPool(settings.concurrency);
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Settings settings = Settings.fromSystemProperties();
+        System.out.println("Load test settings: " + settings);
+
+        try (KeycloakStub keycloak = new KeycloakStub(REALM, CLIENT_ID, Duration.ofSeconds(settings.tokenTtlSeconds),
+                settings.tokenFault, settings.adminFault)) {
+            keycloak.start();
+            MongoServer mongo = new MongoServer(new MemoryBackend());
+            InetSocketAddress mongoAddress = mongo.bind();
+            // Keycloak must be up first: the JWK set is loaded while the context starts
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(SpringBootKeycloakApiApplication.class)
+                    .run(applicationArgs(settings, keycloak, mongoAddress));
+            LoadTest loadTest = new LoadTest(settings);
+            try {
+                String contextPath = settings.profiles.contains("reactive")
+                        ? context.getEnvironment().getProperty("spring.webflux.base-path", "")
+                        : context.getEnvironment().getProperty("server.servlet.context-path", "");
+                loadTest.baseUrl = "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port")
+                        + contextPath;
+                List<Result> results = loadTest.run();
+                report(results);
+                loadTest.writeReport(settings, results);
+            } finally {
+                loadTest.workers.shutdownNow();
+                context.close();
+                mongo.shutdownNow();
+            }
+        }
+    }
+
+    private static String[] applicationArgs(Settings settings, KeycloakStub keycloak, InetSocketAddress mongo) {
+        // Command-line arguments, so they win over application.yml and environment variables
+        return new String[] {
+                "--spring.profiles.active=" + String.join(",", settings.profiles),
+                "--server.port=0",
+                "--spring.data.mongodb.uri=mongodb://" + mongo.getHostString() + ":" + mongo.getPort() + "/loadtest",
+                "--keycloak.auth-server-url=" + keycloak.authServerUrl(),
+                "--keycloak.realm=" + REALM,
+                "--keycloak.resource=" + CLIENT_ID,
+                "--keycloak.credentials.secret=loadtest-secret",
+                // A fresh outbox journal, so no registrations are replayed from an earlier run
+                "--user-outbox.directory=" + outboxDirectory()
+        };
+    }
+
+    private static String outboxDirectory() {
+        try {
+            return Files.createTempDirectory("loadtest-outbox").toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    List<Result> run() throws Exception {
+        registered = new Session[settings.users];
+        List<Result> results = new ArrayList<>();
+
+        // Warm-up users are registered under their own names and never reused
+        phase("register", settings.warmup, i -> register("warmup-" + i), null);
+        results.add(phase("register", settings.users, i -> register("user-" + i), this::remember));
+        // With error injection some registrations fail; the later phases use the users that made it
+        sessions = new ArrayList<>();
+        for (Session session : registered) {
+            if (session != null) {
+                sessions.add(session);
+            }
+        }
+        if (sessions.isEmpty()) {
+            throw new IllegalStateException("No user could be registered; see the register errors above");
+        }
+
+        String[] phases = {"login", "refresh", "profile", "revalidate"};
+        for (String name : phases) {
+            IntFunction<HttpRequest> request = requestFor(name);
+            // The profile ETags are kept for the revalidate phase, which polls with If-None-Match
+            BiConsumer<Integer, HttpResponse<String>> onSuccess = "profile".equals(name)
+                    ? (i, response) -> session(i).profileETag = response.headers().firstValue("ETag").orElse(null)
+                    : null;
+            phase(name, settings.warmup, request, onSuccess);
+            results.add(phase(name, settings.requests, request, onSuccess));
+        }
+        return results;
+    }
+
+    private IntFunction<HttpRequest> requestFor(String phase) {
+        switch (phase) {
+            case "login":
+                return i -> post("/auth/login", "application/json",
+                        json(Map.of("username", session(i).username, "password", PASSWORD)));
+            case "refresh":
+                return i -> post("/auth/refresh", "text/plain", session(i).refreshToken);
+            case "profile":
+                return i -> HttpRequest.newBuilder(URI.create(baseUrl + "/auth/profile"))
+                        .header("Authorization", "Bearer " + session(i).accessToken)
+                        .timeout(Duration.ofSeconds(30))
+                        .GET()
+                        .build();
+            case "revalidate":
+                return i -> HttpRequest.newBuilder(URI.create(baseUrl + "/auth/profile"))
+                        .header("Authorization", "Bearer " + session(i).accessToken)
+                        .header("If-None-Match", String.valueOf(session(i).profileETag))
+                        .timeout(Duration.ofSeconds(30))
+                        .GET()
+                        .build();
+            default:
+                throw new IllegalArgumentException(phase);
+        }
+    }
+
+    private Session session(int index) {
+        return sessions.get(index % sessions.size());
+    }
+
+    private HttpRequest register(String username) {
+        Map<String, String> body = new LinkedHashMap<>();
+        body.put("username", username);
+        body.put("password", PASSWORD);
+        body.put("email", username + "@loadtest.example.com");
+        body.put("firstName", "Load");
+        body.put("lastName", "Test");
+        return post("/auth/register", "application/json", json(body));
+    }
+
+    /**
+     * Sends {@code count} requests from {@code concurrency} workers, each taking the next index
+     * until none are left, and records the latency of every request. Successful response bodies
+     * (2xx, or 304 to a conditional request) are passed to {@code onSuccess} when it is set.
+     */
+    private Result phase(String name, int count, IntFunction<HttpRequest> requests,
+                         BiConsumer<Integer, HttpResponse<String>> onSuccess) throws Exception {
+        long[] latencies = new long[count];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        Map<Integer, String> errorSamples = new LinkedHashMap<>();
+
+        long start = System.nanoTime();
+        List<Future<?>> running = new ArrayList<>();
+        for (int w = 0; w < settings.concurrency; w++) {
+            running.add(workers.submit(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < count) {
+                    HttpRequest request = requests.apply(i);
+                    long sent = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+                        latencies[i] = System.nanoTime() - sent;
+                        if (response.statusCode() / 100 != 2 && response.statusCode() != 304) {
+                            errors.incrementAndGet();
+                            synchronized (errorSamples) {
+                                errorSamples.putIfAbsent(response.statusCode(), response.body());
+                            }
+                        } else if (onSuccess != null) {
+                            onSuccess.accept(i, response);
+                        }
+                    } catch (IOException e) {
+                        latencies[i] = System.nanoTime() - sent;
+                        errors.incrementAndGet();
+                        synchronized (errorSamples) {
+                            errorSamples.putIfAbsent(-1, e.toString());
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : running) {
+            worker.get();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        errorSamples.forEach((status, body) -> System.out.println("  " + name + " error sample (" + status + "): " + body));
+        return new Result(name, latencies, errors.get(), elapsed);
+    }
+
+    private void remember(int index, HttpResponse<String> response) {
+        String body = response.body();
+        try {
+            JsonNode auth = objectMapper.readTree(body);
+            registered[index] = new Session(auth.path("username").asText(),
+                    auth.path("accessToken").asText(), auth.path("refreshToken").asText());
+        } catch (IOException e) {
+            throw new IllegalStateException("Unreadable register response: " + body, e);
+        }
+    }
+
+    private HttpRequest post(String path, String contentType, String body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", contentType)
+                .timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private String json(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void report(List<Result> results) {
+        System.out.println();
+        System.out.printf("%-10s %9s %7s %10s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        for (Result result : results) {
+            System.out.printf("%-10s %9d %7d %10.1f %9.2f %9.2f %9.2f %9.2f%n",
+                    result.endpoint, result.requests(), result.errors, result.throughput(),
+                    result.percentileMs(50), result.percentileMs(90), result.percentileMs(99), result.percentileMs(100));
+        }
+    }
+
+    private void writeReport(Settings settings, List<Result> results) throws IOException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("settings", settings.toMap());
+        List<Map<String, Object>> endpoints = new ArrayList<>();
+        for (Result result : results) {
+            Map<String, Object> endpoint = new LinkedHashMap<>();
+            endpoint.put("endpoint", result.endpoint);
+            endpoint.put("requests", result.requests());
+            endpoint.put("errors", result.errors);
+            endpoint.put("throughput", result.throughput());
+            endpoint.put("p50Ms", result.percentileMs(50));
+            endpoint.put("p90Ms", result.percentileMs(90));
+            endpoint.put("p99Ms", result.percentileMs(99));
+            endpoint.put("maxMs", result.percentileMs(100));
+            endpoints.add(endpoint);
+        }
+        report.put("results", endpoints);
+
+        Path file = Path.of(settings.reportFile);
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        objectMapper.enable(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), report);
+        System.out.println("\nResults written to " + file.toAbsolutePath());
+    }
+
+    private static class Session {
+
+        final String username;
+        final String accessToken;
+        final String refreshToken;
+        volatile String profileETag;
+
+        Session(String username, String accessToken, String refreshToken) {
+            this.username = username;
+            this.accessToken = accessToken;
+            this.refreshToken = refreshToken;
+        }
+    }
+
+    static class Result {
+
+        final String endpoint;
+        final long[] sortedLatencies;
+        final int errors;
+        final long elapsedNanos;
+
+        Result(String endpoint, long[] latencies, int errors, long elapsedNanos) {
+            this.endpoint = endpoint;
+            this.sortedLatencies = latencies.clone();
+            Arrays.sort(this.sortedLatencies);
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        int requests() {
+            return sortedLatencies.length;
+        }
+
+        double throughput() {
+            return requests() / (elapsedNanos / 1e9);
+        }
+
+        double percentileMs(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100 * sortedLatencies.length);
+            return sortedLatencies[Math.max(0, rank - 1)] / 1e6;
+        }
+    }
+
+    /**
+     * Load test settings, read from {@code loadtest.*} system properties.
+     */
+    static class Settings {
+
+        final int concurrency = Integer.getInteger("loadtest.concurrency", 32);
+        final int users = Integer.getInteger("loadtest.users", 500);
+        final int requests = Integer.getInteger("loadtest.requests", 5000);
+        final int warmup = Integer.getInteger("loadtest.warmup", 500);
+        final long tokenTtlSeconds = Long.getLong("loadtest.keycloak.token-ttl-seconds", 3600);
+        final List<String> profiles;
+        final KeycloakStub.Fault tokenFault;
+        final KeycloakStub.Fault adminFault;
+        final String reportFile = System.getProperty("loadtest.report-file", "build/reports/loadtest/results.json");
+
+        private Settings(List<String> profiles, KeycloakStub.Fault tokenFault, KeycloakStub.Fault adminFault) {
+            this.profiles = profiles;
+            this.tokenFault = tokenFault;
+            this.adminFault = adminFault;
+        }
+
+        static Settings fromSystemProperties() {
+            List<String> profiles = new ArrayList<>(List.of("loadtest"));
+            for (String profile : System.getProperty("loadtest.profiles", "").split(",")) {
+                if (!profile.isBlank()) {
+                    profiles.add(profile.trim());
+                }
+            }
+            return new Settings(profiles, fault("token"), fault("admin"));
+        }
+
+        private static KeycloakStub.Fault fault(String group) {
+            String prefix = "loadtest.keycloak." + group + ".";
+            return new KeycloakStub.Fault(
+                    Long.getLong(prefix + "latency-ms", 0),
+                    Long.getLong(prefix + "jitter-ms", 0),
+                    Double.parseDouble(System.getProperty(prefix + "error-rate", "0")));
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("concurrency", concurrency);
+            map.put("users", users);
+            map.put("requests", requests);
+            map.put("warmup", warmup);
+            map.put("profiles", profiles);
+            map.put("keycloakToken", tokenFault.toString());
+            map.put("keycloakAdmin", adminFault.toString());
+            return map;
+        }
+
+        @Override
+        public String toString() {
+            return toMap().toString();
+        }
+    }
+}
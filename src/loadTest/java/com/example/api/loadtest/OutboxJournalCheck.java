@@ -0,0 +1,152 @@
+package com.example.api.loadtest;
+
+import com.example.api.model.User;
+import com.example.api.service.UserOutbox;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Checks that {@link UserOutbox} recovers from a crash in the middle of a journal write: the torn
+ * last line is dropped on startup, a user appended afterwards is journaled on a line of its own,
+ * and both the earlier user and the new one are replayed after the next restart.
+ * <p>
+ * MongoDB is unreachable throughout, so nothing leaves the journal. Needs no external services.
+ * Exits with status 1 if any check fails.
+ */
+public class OutboxJournalCheck {
+
+    // Nothing listens here; every write fails fast and the entries stay journaled
+    private static final String UNREACHABLE_MONGO = "mongodb://127.0.0.1:1/?serverSelectionTimeoutMS=100&connectTimeoutMS=100";
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("outbox-journal-check");
+        List<String> failures;
+        try (MongoClient client = MongoClients.create(UNREACHABLE_MONGO)) {
+            failures = new OutboxJournalCheck().run(new MongoTemplate(client, "outbox_journal_check"), dir);
+        } finally {
+            FileSystemUtils.deleteRecursively(dir);
+        }
+        if (!failures.isEmpty()) {
+            System.out.println();
+            failures.forEach(failure -> System.out.println("FAILED " + failure));
+            System.exit(1);
+        }
+    }
+
+    List<String> run(MongoTemplate mongoTemplate, Path dir) throws Exception {
+        User before = user("before-crash");
+        User torn = user("torn");
+        User after = user("after-crash");
+
+        // The state a crash leaves behind: one complete entry, then part of the next
+        String tornLine = entryLine(2, torn);
+        Files.write(dir.resolve("users.journal"), (entryLine(1, before) + "\n"
+                + tornLine.substring(0, tornLine.length() / 2)).getBytes(StandardCharsets.UTF_8));
+
+        UserOutbox outbox = open(mongoTemplate, dir);
+        try {
+            check("complete entry is replayed", outbox.pendingById(before.getId()).isPresent());
+            check("torn entry is not replayed", outbox.pendingById(torn.getId()).isEmpty());
+            outbox.append(after);
+        } finally {
+            close(outbox);
+        }
+
+        List<String> lines = Files.readAllLines(dir.resolve("users.journal"), StandardCharsets.UTF_8);
+        check("every journal line is readable after the append", lines.stream().allMatch(this::readable));
+
+        UserOutbox restarted = open(mongoTemplate, dir);
+        try {
+            check("earlier entry is replayed after restart", restarted.pendingById(before.getId()).isPresent());
+            check("entry appended after the torn line is replayed after restart",
+                    restarted.pendingById(after.getId()).isPresent());
+        } finally {
+            close(restarted);
+        }
+        return failures;
+    }
+
+    private UserOutbox open(MongoTemplate mongoTemplate, Path dir) {
+        UserOutbox outbox = new UserOutbox(mongoTemplate, objectMapper, null, null, new SimpleMeterRegistry());
+        setField(outbox, "directory", dir.toString());
+        setField(outbox, "fsync", true);
+        setField(outbox, "batchSize", 100);
+        setField(outbox, "flushIntervalMs", 50L);
+        setField(outbox, "retryIntervalMs", 100L);
+        setField(outbox, "maxRetryIntervalMs", 200L);
+        setField(outbox, "compactBytes", 1L << 20);
+        setField(outbox, "realm", "check");
+        invoke(outbox, "open");
+        return outbox;
+    }
+
+    private static void close(UserOutbox outbox) {
+        invoke(outbox, "close");
+    }
+
+    private void check(String name, boolean passed) {
+        System.out.println((passed ? "PASS  " : "FAIL  ") + name);
+        if (!passed) {
+            failures.add(name);
+        }
+    }
+
+    private boolean readable(String line) {
+        try {
+            objectMapper.readTree(line);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private String entryLine(long seq, User user) throws IOException {
+        return "{\"seq\":" + seq + ",\"user\":" + objectMapper.writeValueAsString(user) + "}";
+    }
+
+    private static User user(String name) {
+        return User.builder()
+                .id(new ObjectId().toHexString())
+                .username(name)
+                .email(name + "@example.com")
+                .firstName("Outbox")
+                .lastName("Check")
+                .keycloakId(UUID.randomUUID().toString())
+                .createdAt(LocalDateTime.now())
+                .updatedAt(LocalDateTime.now())
+                .build();
+    }
+
+    private static void setField(Object target, String name, Object value) {
+        Field field = ReflectionUtils.findField(target.getClass(), name);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+
+    private static void invoke(Object target, String name) {
+        Method method = ReflectionUtils.findMethod(target.getClass(), name);
+        ReflectionUtils.makeAccessible(method);
+        ReflectionUtils.invokeMethod(method, target);
+    }
+}
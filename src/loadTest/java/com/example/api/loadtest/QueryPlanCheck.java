@@ -0,0 +1,208 @@
+package com.example.api.loadtest;
+
+import com.example.api.model.User;
+import com.example.api.repository.UserRepository;
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Runs the hot {@link UserRepository} queries against a real MongoDB and checks their plans with
+ * {@code explain}: each must be answered from an index, examine at most the one document it
+ * returns, and ask only for the fields its projection needs.
+ * <p>
+ * The in-memory server used by {@link LoadTest} has no query planner, so this needs a real server:
+ * {@code MONGODB_URI} (default {@code mongodb://localhost:27017}). It works in its own database,
+ * which it drops when done. Exits with status 1 if any check fails.
+ */
+public class QueryPlanCheck {
+
+    private static final String DATABASE = "query_plan_check";
+    private static final int USERS = 5000;
+    private static final Set<String> PROFILE_FIELDS =
+            Set.of("_id", "username", "email", "firstName", "lastName", "createdAt", "updatedAt");
+
+    private final MongoTemplate mongoTemplate;
+    private final List<BsonDocument> commands;
+    private final List<String> failures = new ArrayList<>();
+
+    QueryPlanCheck(MongoTemplate mongoTemplate, List<BsonDocument> commands) {
+        this.mongoTemplate = mongoTemplate;
+        this.commands = commands;
+    }
+
+    public static void main(String[] args) {
+        String uri = System.getenv().getOrDefault("MONGODB_URI", "mongodb://localhost:27017");
+        List<BsonDocument> commands = new CopyOnWriteArrayList<>();
+        MongoClientSettings settings = MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(uri))
+                .addCommandListener(new CommandListener() {
+                    @Override
+                    public void commandStarted(CommandStartedEvent event) {
+                        if ("find".equals(event.getCommandName()) || "aggregate".equals(event.getCommandName())) {
+                            commands.add(event.getCommand().clone());
+                        }
+                    }
+                })
+                .build();
+
+        List<String> failures;
+        try (MongoClient client = MongoClients.create(settings)) {
+            MongoTemplate mongoTemplate = new MongoTemplate(client, DATABASE);
+            mongoTemplate.getDb().drop();
+            try {
+                failures = new QueryPlanCheck(mongoTemplate, commands).run();
+            } finally {
+                mongoTemplate.getDb().drop();
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            System.out.println();
+            failures.forEach(failure -> System.out.println("FAILED " + failure));
+            System.exit(1);
+        }
+    }
+
+    List<String> run() {
+        // The same indexes the application creates at startup (auto-index-creation)
+        IndexResolver.create(mongoTemplate.getConverter().getMappingContext())
+                .resolveIndexFor(User.class)
+                .forEach(mongoTemplate.indexOps(User.class)::ensureIndex);
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            users.add(User.builder()
+                    .username("user-" + i)
+                    .email("user-" + i + "@example.com")
+                    .firstName("First" + i)
+                    .lastName("Last" + i)
+                    .keycloakId(UUID.randomUUID().toString())
+                    .createdAt(LocalDateTime.now())
+                    .updatedAt(LocalDateTime.now())
+                    .build());
+        }
+        mongoTemplate.insertAll(users);
+        User sample = users.get(USERS / 2);
+
+        UserRepository repository = new MongoRepositoryFactory(mongoTemplate).getRepository(UserRepository.class);
+        check("findIdentityByKeycloakId", () -> repository.findIdentityByKeycloakId(sample.getKeycloakId()),
+                1, Set.of("_id", "username"));
+        check("findProfileById", () -> repository.findProfileById(sample.getId()), 1, PROFILE_FIELDS);
+        check("findProfileByUsername", () -> repository.findProfileByUsername(sample.getUsername()), 1, PROFILE_FIELDS);
+        // Counted with limit 1 over the index alone, without loading the document
+        check("existsByUsername", () -> repository.existsByUsername(sample.getUsername()), 0, null);
+        check("existsByEmail", () -> repository.existsByEmail(sample.getEmail()), 0, null);
+        return failures;
+    }
+
+    /**
+     * Runs {@code query}, then explains the command it sent.
+     *
+     * @param maxDocsExamined documents the plan may load
+     * @param projection      exact fields the command must ask for, or {@code null} for count queries
+     */
+    private void check(String name, Runnable query, long maxDocsExamined, Set<String> projection) {
+        commands.clear();
+        query.run();
+        if (commands.size() != 1) {
+            failures.add(name + ": expected one find or aggregate command, saw " + commands.size());
+            return;
+        }
+        BsonDocument command = commands.get(0);
+
+        BsonDocument explainable = new BsonDocument();
+        command.forEach((key, value) -> {
+            // Session and routing fields added by the driver are not part of the query
+            if (!key.startsWith("$") && !key.equals("lsid") && !key.equals("txnNumber")) {
+                explainable.append(key, value);
+            }
+        });
+        Document explain = mongoTemplate.getDb().runCommand(new BsonDocument("explain", explainable)
+                .append("verbosity", new BsonString("executionStats")));
+
+        Set<String> stages = new LinkedHashSet<>();
+        collectStages(explain, stages);
+        long docsExamined = firstLong(explain, "totalDocsExamined");
+        long keysExamined = firstLong(explain, "totalKeysExamined");
+        Set<String> requested = command.containsKey("projection") ? command.getDocument("projection").keySet() : null;
+
+        List<String> problems = new ArrayList<>();
+        if (stages.contains("COLLSCAN")) {
+            problems.add("collection scan");
+        }
+        if (stages.stream().noneMatch(QueryPlanCheck::isIndexStage)) {
+            problems.add("no index stage");
+        }
+        if (docsExamined < 0) {
+            problems.add("no execution stats in the explain output");
+        } else if (docsExamined > maxDocsExamined) {
+            problems.add(docsExamined + " documents examined, expected at most " + maxDocsExamined);
+        }
+        if (projection != null && !projection.equals(requested)) {
+            problems.add("projection " + requested + ", expected " + projection);
+        }
+
+        System.out.printf("%s %-26s stages=%s keysExamined=%d docsExamined=%d projection=%s%n",
+                problems.isEmpty() ? "PASS  " : "FAIL  ", name, stages, keysExamined, docsExamined, requested);
+        problems.forEach(problem -> failures.add(name + ": " + problem));
+    }
+
+    private static boolean isIndexStage(String stage) {
+        return stage.contains("IXSCAN") || stage.contains("IDHACK") || stage.equals("COUNT_SCAN");
+    }
+
+    // Plans nest differently for find, aggregate and the slot-based engine, so walk the whole document
+    private static void collectStages(Object node, Set<String> stages) {
+        if (node instanceof Document) {
+            ((Document) node).forEach((key, value) -> {
+                if ("stage".equals(key) && value instanceof String) {
+                    stages.add((String) value);
+                } else if (!"rejectedPlans".equals(key)) {
+                    collectStages(value, stages);
+                }
+            });
+        } else if (node instanceof List) {
+            ((List<?>) node).forEach(child -> collectStages(child, stages));
+        }
+    }
+
+    private static long firstLong(Object node, String field) {
+        if (node instanceof Document) {
+            Document document = (Document) node;
+            if (document.get(field) instanceof Number) {
+                return ((Number) document.get(field)).longValue();
+            }
+            for (Object value : document.values()) {
+                long found = firstLong(value, field);
+                if (found >= 0) {
+                    return found;
+                }
+            }
+        } else if (node instanceof List) {
+            for (Object child : (List<?>) node) {
+                long found = firstLong(child, field);
+                if (found >= 0) {
+                    return found;
+                }
+            }
+        }
+        return -1;
+    }
+}
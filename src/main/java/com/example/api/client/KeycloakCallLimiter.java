@@ -0,0 +1,339 @@
+package com.example.api.client;
+
+import com.example.api.exception.KeycloakUnavailableException;
+import com.netflix.concurrency.limits.Limiter;
+import com.netflix.concurrency.limits.limit.Gradient2Limit;
+import com.netflix.concurrency.limits.limiter.SimpleLimiter;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PostConstruct;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.ServerErrorException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Guards every blocking Keycloak call. A call must pass, in order:
+ * <ol>
+ *     <li>the shared circuit breaker, which fails fast while Keycloak is erroring or slow;</li>
+ *     <li>the bulkhead of its {@link KeycloakOperation}, so a burst of one kind cannot starve the others;</li>
+ *     <li>a shared adaptive limit that shrinks when Keycloak latency rises above its baseline.</li>
+ * </ol>
+ * Rejections surface as {@link KeycloakUnavailableException} (503). Per-operation timeouts are applied
+ * by the HTTP clients themselves, so a timed-out call ends as an I/O error that the breaker records.
+ * <p>
+ * {@link #callAsync} applies the same guards to the non-blocking client of the {@code reactive}
+ * profile. It waits for a bulkhead permit off the event loop, and applies the operation's timeout itself.
+ */
+@Component
+@Slf4j
+public class KeycloakCallLimiter {
+
+    private static final List<String> REJECTION_REASONS = List.of("circuit_open", "bulkhead", "limit");
+
+    @Value("${keycloak-client.concurrency.initial-limit:20}")
+    private int initialLimit;
+
+    @Value("${keycloak-client.concurrency.min-limit:4}")
+    private int minLimit;
+
+    @Value("${keycloak-client.concurrency.max-in-flight:64}")
+    private int maxInFlight;
+
+    @Value("${keycloak-client.operations.login.max-concurrent:40}")
+    private int loginMaxConcurrent;
+
+    @Value("${keycloak-client.operations.login.acquire-timeout-ms:500}")
+    private long loginAcquireTimeoutMs;
+
+    @Value("${keycloak-client.operations.refresh.max-concurrent:20}")
+    private int refreshMaxConcurrent;
+
+    @Value("${keycloak-client.operations.refresh.acquire-timeout-ms:500}")
+    private long refreshAcquireTimeoutMs;
+
+    @Value("${keycloak-client.operations.admin.max-concurrent:10}")
+    private int adminMaxConcurrent;
+
+    @Value("${keycloak-client.operations.admin.acquire-timeout-ms:2000}")
+    private long adminAcquireTimeoutMs;
+
+    @Value("${keycloak-client.operations.login.timeout-ms:3000}")
+    private long loginTimeoutMs;
+
+    @Value("${keycloak-client.operations.refresh.timeout-ms:3000}")
+    private long refreshTimeoutMs;
+
+    @Value("${keycloak-client.operations.admin.timeout-ms:5000}")
+    private long adminTimeoutMs;
+
+    @Value("${keycloak-client.circuit-breaker.failure-rate-threshold:50}")
+    private float failureRateThreshold;
+
+    @Value("${keycloak-client.circuit-breaker.slow-call-duration-threshold-ms:2000}")
+    private long slowCallDurationThresholdMs;
+
+    @Value("${keycloak-client.circuit-breaker.slow-call-rate-threshold:80}")
+    private float slowCallRateThreshold;
+
+    @Value("${keycloak-client.circuit-breaker.sliding-window-size:50}")
+    private int slidingWindowSize;
+
+    @Value("${keycloak-client.circuit-breaker.minimum-number-of-calls:20}")
+    private int minimumNumberOfCalls;
+
+    @Value("${keycloak-client.circuit-breaker.wait-duration-in-open-state-ms:10000}")
+    private long waitDurationInOpenStateMs;
+
+    @Value("${keycloak-client.circuit-breaker.permitted-calls-in-half-open-state:5}")
+    private int permittedCallsInHalfOpenState;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<KeycloakOperation, Bulkhead> bulkheads = new EnumMap<>(KeycloakOperation.class);
+    private final Map<KeycloakOperation, Duration> timeouts = new EnumMap<>(KeycloakOperation.class);
+    private SimpleLimiter<Void> adaptiveLimit;
+    private CircuitBreaker circuitBreaker;
+
+    public KeycloakCallLimiter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        bulkheads.put(KeycloakOperation.LOGIN, new Bulkhead(KeycloakOperation.LOGIN, loginMaxConcurrent, loginAcquireTimeoutMs));
+        bulkheads.put(KeycloakOperation.REFRESH, new Bulkhead(KeycloakOperation.REFRESH, refreshMaxConcurrent, refreshAcquireTimeoutMs));
+        bulkheads.put(KeycloakOperation.ADMIN, new Bulkhead(KeycloakOperation.ADMIN, adminMaxConcurrent, adminAcquireTimeoutMs));
+        timeouts.put(KeycloakOperation.LOGIN, Duration.ofMillis(loginTimeoutMs));
+        timeouts.put(KeycloakOperation.REFRESH, Duration.ofMillis(refreshTimeoutMs));
+        timeouts.put(KeycloakOperation.ADMIN, Duration.ofMillis(adminTimeoutMs));
+
+        adaptiveLimit = SimpleLimiter.newBuilder()
+                .named("keycloak")
+                .limit(Gradient2Limit.newBuilder()
+                        .initialLimit(initialLimit)
+                        .minLimit(minLimit)
+                        .maxConcurrency(maxInFlight)
+                        .build())
+                .build();
+        Gauge.builder("keycloak.calls.limit", adaptiveLimit, SimpleLimiter::getLimit)
+                .description("Current adaptive limit on concurrent Keycloak calls")
+                .register(meterRegistry);
+        Gauge.builder("keycloak.calls.in.flight", adaptiveLimit, SimpleLimiter::getInflight)
+                .description("Keycloak calls currently in flight")
+                .register(meterRegistry);
+
+        CircuitBreakerRegistry circuitBreakers = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slowCallDurationThreshold(Duration.ofMillis(slowCallDurationThresholdMs))
+                .slowCallRateThreshold(slowCallRateThreshold)
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(minimumNumberOfCalls)
+                .waitDurationInOpenState(Duration.ofMillis(waitDurationInOpenStateMs))
+                .permittedNumberOfCallsInHalfOpenState(permittedCallsInHalfOpenState)
+                .recordException(KeycloakCallLimiter::isKeycloakFailure)
+                .build());
+        circuitBreaker = circuitBreakers.circuitBreaker("keycloak");
+        circuitBreaker.getEventPublisher().onStateTransition(event ->
+                log.warn("Keycloak circuit breaker {}", event.getStateTransition()));
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakers).bindTo(meterRegistry);
+    }
+
+    public <T> T call(KeycloakOperation operation, Supplier<T> call) {
+        Bulkhead bulkhead = bulkheads.get(operation);
+        if (!circuitBreaker.tryAcquirePermission()) {
+            throw bulkhead.reject("circuit_open", "Keycloak is unavailable, try again later",
+                    TimeUnit.MILLISECONDS.toSeconds(waitDurationInOpenStateMs));
+        }
+        if (!bulkhead.tryAcquire()) {
+            circuitBreaker.releasePermission();
+            throw bulkhead.reject("bulkhead", "Too many concurrent Keycloak " + operation.tag() + " calls", 1);
+        }
+        Optional<Limiter.Listener> slot = adaptiveLimit.acquire(null);
+        if (slot.isEmpty()) {
+            bulkhead.release();
+            circuitBreaker.releasePermission();
+            throw bulkhead.reject("limit", "Keycloak is busy, try again later", 1);
+        }
+
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            slot.get().onSuccess();
+            circuitBreaker.onSuccess(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (Throwable e) {
+            // Errors too, or the slot and the breaker permission would be held forever.
+            // Rejections such as bad credentials are normal Keycloak responses and still a valid latency sample
+            if (isKeycloakFailure(e)) {
+                slot.get().onDropped();
+            } else {
+                slot.get().onSuccess();
+            }
+            circuitBreaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, e);
+            throw e;
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    public void run(KeycloakOperation operation, Runnable call) {
+        call(operation, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    /**
+     * Non-blocking variant of {@link #call}: the guards are checked on subscription and released when
+     * the call completes, fails, times out or is cancelled.
+     */
+    public <T> Mono<T> callAsync(KeycloakOperation operation, Mono<T> call) {
+        Bulkhead bulkhead = bulkheads.get(operation);
+        return Mono.defer(() -> {
+            if (!circuitBreaker.tryAcquirePermission()) {
+                return Mono.error(bulkhead.reject("circuit_open", "Keycloak is unavailable, try again later",
+                        TimeUnit.MILLISECONDS.toSeconds(waitDurationInOpenStateMs)));
+            }
+            // A free permit is taken on the calling thread; waiting for one must not block the event loop
+            Mono<Boolean> permit = bulkhead.tryAcquireNow()
+                    ? Mono.just(true)
+                    : Mono.fromCallable(bulkhead::tryAcquire)
+                            .subscribeOn(Schedulers.boundedElastic())
+                            // Cancelled while waiting: hand back what was taken
+                            .doOnDiscard(Boolean.class, acquired -> {
+                                if (acquired) {
+                                    bulkhead.release();
+                                }
+                            })
+                            .doOnCancel(circuitBreaker::releasePermission);
+            return permit.flatMap(acquired -> {
+                if (!acquired) {
+                    circuitBreaker.releasePermission();
+                    return Mono.error(bulkhead.reject("bulkhead", "Too many concurrent Keycloak " + operation.tag() + " calls", 1));
+                }
+                return guarded(operation, bulkhead, call);
+            });
+        });
+    }
+
+    private <T> Mono<T> guarded(KeycloakOperation operation, Bulkhead bulkhead, Mono<T> call) {
+        Optional<Limiter.Listener> slot = adaptiveLimit.acquire(null);
+        if (slot.isEmpty()) {
+            bulkhead.release();
+            circuitBreaker.releasePermission();
+            return Mono.error(bulkhead.reject("limit", "Keycloak is busy, try again later", 1));
+        }
+
+        long start = System.nanoTime();
+        AtomicBoolean released = new AtomicBoolean();
+        return call.timeout(timeouts.get(operation))
+                .doOnSuccess(result -> {
+                    if (released.compareAndSet(false, true)) {
+                        slot.get().onSuccess();
+                        circuitBreaker.onSuccess(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        bulkhead.release();
+                    }
+                })
+                .doOnError(e -> {
+                    if (released.compareAndSet(false, true)) {
+                        if (isKeycloakFailure(e)) {
+                            slot.get().onDropped();
+                        } else {
+                            slot.get().onSuccess();
+                        }
+                        circuitBreaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, e);
+                        bulkhead.release();
+                    }
+                })
+                .doOnCancel(() -> {
+                    if (released.compareAndSet(false, true)) {
+                        // Abandoned by the caller: neither a success nor a Keycloak failure
+                        slot.get().onIgnore();
+                        circuitBreaker.releasePermission();
+                        bulkhead.release();
+                    }
+                });
+    }
+
+    // I/O errors (including timeouts) and 5xx responses from any of the clients
+    static boolean isKeycloakFailure(Throwable e) {
+        return e instanceof ResourceAccessException
+                || e instanceof HttpServerErrorException
+                || e instanceof ProcessingException
+                || e instanceof ServerErrorException
+                || e instanceof WebClientRequestException
+                || e instanceof TimeoutException
+                || e instanceof WebClientResponseException && ((WebClientResponseException) e).getStatusCode().is5xxServerError();
+    }
+
+    private class Bulkhead {
+
+        private final Semaphore permits;
+        private final long acquireTimeoutMs;
+        // reason -> counter, registered up front so a rejection is a single increment
+        private final Map<String, Counter> rejections = new HashMap<>();
+
+        Bulkhead(KeycloakOperation operation, int maxConcurrent, long acquireTimeoutMs) {
+            this.permits = new Semaphore(maxConcurrent, true);
+            this.acquireTimeoutMs = acquireTimeoutMs;
+            Gauge.builder("keycloak.calls.bulkhead.in.flight", permits, p -> maxConcurrent - p.availablePermits())
+                    .description("Keycloak calls holding a bulkhead permit")
+                    .tag("operation", operation.tag())
+                    .register(meterRegistry);
+            for (String reason : REJECTION_REASONS) {
+                rejections.put(reason, Counter.builder("keycloak.calls.rejected")
+                        .description("Keycloak calls rejected before being sent")
+                        .tag("operation", operation.tag())
+                        .tag("reason", reason)
+                        .register(meterRegistry));
+            }
+        }
+
+        boolean tryAcquireNow() {
+            return permits.tryAcquire();
+        }
+
+        boolean tryAcquire() {
+            try {
+                return permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        void release() {
+            permits.release();
+        }
+
+        KeycloakUnavailableException reject(String reason, String message, long retryAfterSeconds) {
+            rejections.get(reason).increment();
+            return new KeycloakUnavailableException(message, Math.max(1, retryAfterSeconds));
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.api.client;
+
+/**
+ * Kinds of Keycloak calls; each gets its own bulkhead and timeout.
+ */
+public enum KeycloakOperation {
+    LOGIN("login"),
+    REFRESH("refresh"),
+    ADMIN("admin");
+
+    private final String tag;
+
+    KeycloakOperation(String tag) {
+        this.tag = tag;
+    }
+
+    public String tag() {
+        return tag;
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.api.client;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.keycloak.representations.AccessTokenResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Talks to the realm's OAuth2 token endpoint directly over a shared keep-alive connection pool.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class KeycloakTokenClient {
+
+    @Value("${keycloak.auth-server-url}")
+    private String authServerUrl;
+
+    @Value("${keycloak.realm}")
+    private String realm;
+
+    @Value("${keycloak.resource}")
+    private String clientId;
+
+    @Value("${keycloak.credentials.secret}")
+    private String clientSecret;
+
+    @Value("${keycloak-client.token.max-connections:100}")
+    private int maxConnections;
+
+    @Value("${keycloak-client.token.connect-timeout-ms:2000}")
+    private int connectTimeoutMs;
+
+    @Value("${keycloak-client.token.read-timeout-ms:5000}")
+    private int readTimeoutMs;
+
+    @Value("${keycloak-client.operations.login.timeout-ms:3000}")
+    private int loginTimeoutMs;
+
+    @Value("${keycloak-client.operations.refresh.timeout-ms:3000}")
+    private int refreshTimeoutMs;
+
+    @Value("${keycloak-client.token.pool-acquire-timeout-ms:1000}")
+    private int poolAcquireTimeoutMs;
+
+    @Value("${keycloak-client.token.idle-eviction-seconds:60}")
+    private long idleEvictionSeconds;
+
+    private final KeycloakCallLimiter callLimiter;
+
+    private CloseableHttpClient httpClient;
+    private RestTemplate loginTemplate;
+    private RestTemplate refreshTemplate;
+    private String tokenEndpoint;
+
+    @PostConstruct
+    void init() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMs)
+                .setSocketTimeout(readTimeoutMs)
+                .setConnectionRequestTimeout(poolAcquireTimeoutMs)
+                .build();
+
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleEvictionSeconds, TimeUnit.SECONDS)
+                .build();
+        // Both templates share one connection pool and differ only in their read timeout
+        loginTemplate = new RestTemplate(requestFactory(loginTimeoutMs));
+        refreshTemplate = new RestTemplate(requestFactory(refreshTimeoutMs));
+        tokenEndpoint = authServerUrl + "/realms/" + realm + "/protocol/openid-connect/token";
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        httpClient.close();
+    }
+
+    public AccessTokenResponse passwordGrant(String username, String password) {
+        MultiValueMap<String, String> form = clientForm("password");
+        form.add("username", username);
+        form.add("password", password);
+        return post(KeycloakOperation.LOGIN, loginTemplate, form);
+    }
+
+    public AccessTokenResponse refreshGrant(String refreshToken) {
+        MultiValueMap<String, String> form = clientForm("refresh_token");
+        form.add("refresh_token", refreshToken);
+        return post(KeycloakOperation.REFRESH, refreshTemplate, form);
+    }
+
+    private MultiValueMap<String, String> clientForm(String grantType) {
+        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+        form.add("grant_type", grantType);
+        form.add("client_id", clientId);
+        form.add("client_secret", clientSecret);
+        return form;
+    }
+
+    private HttpComponentsClientHttpRequestFactory requestFactory(int readTimeoutMs) {
+        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(readTimeoutMs);
+        return requestFactory;
+    }
+
+    private AccessTokenResponse post(KeycloakOperation operation, RestTemplate restTemplate, MultiValueMap<String, String> form) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        return callLimiter.call(operation, () ->
+                restTemplate.postForObject(tokenEndpoint, new HttpEntity<>(form, headers), AccessTokenResponse.class));
+    }
+}
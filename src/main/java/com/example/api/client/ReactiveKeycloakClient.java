@@ -0,0 +1,266 @@
+package com.example.api.client;
+
+import com.example.api.exception.UserAlreadyExistsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import org.keycloak.representations.AccessTokenResponse;
+import org.keycloak.representations.idm.RoleRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Non-blocking client for the Keycloak token endpoint and the admin REST API, used by the
+ * {@code reactive} profile. Admin tokens and realm roles are cached as replayable {@link Mono}s.
+ * Every call goes through {@link KeycloakCallLimiter#callAsync}, like the blocking clients.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveKeycloakClient {
+
+    private static final ParameterizedTypeReference<List<UserRepresentation>> USER_LIST =
+            new ParameterizedTypeReference<>() {
+            };
+    private static final ParameterizedTypeReference<List<RoleRepresentation>> ROLE_LIST =
+            new ParameterizedTypeReference<>() {
+            };
+
+    @Value("${keycloak.auth-server-url}")
+    private String authServerUrl;
+
+    @Value("${keycloak.realm}")
+    private String realm;
+
+    @Value("${keycloak.resource}")
+    private String clientId;
+
+    @Value("${keycloak.credentials.secret}")
+    private String clientSecret;
+
+    @Value("${keycloak-client.admin.realm:master}")
+    private String adminRealm;
+
+    @Value("${keycloak-client.admin.client-id:admin-cli}")
+    private String adminClientId;
+
+    @Value("${keycloak-client.admin.username:admin}")
+    private String adminUsername;
+
+    @Value("${keycloak-client.admin.password:admin}")
+    private String adminPassword;
+
+    @Value("${keycloak-client.admin.min-token-validity-seconds:30}")
+    private long minTokenValiditySeconds;
+
+    @Value("${keycloak-client.roles.refresh-interval-ms:300000}")
+    private long rolesRefreshIntervalMs;
+
+    @Value("${keycloak-client.token.max-connections:100}")
+    private int maxConnections;
+
+    @Value("${keycloak-client.token.connect-timeout-ms:2000}")
+    private int connectTimeoutMs;
+
+    @Value("${keycloak-client.token.read-timeout-ms:5000}")
+    private long readTimeoutMs;
+
+    @Value("${keycloak-client.token.pool-acquire-timeout-ms:1000}")
+    private long poolAcquireTimeoutMs;
+
+    @Value("${keycloak-client.token.idle-eviction-seconds:60}")
+    private long idleEvictionSeconds;
+
+    private final WebClient.Builder webClientBuilder;
+    private final KeycloakCallLimiter callLimiter;
+    private final Counter adminTokenFetches;
+
+    private ConnectionProvider connectionProvider;
+    private WebClient webClient;
+    private Mono<String> adminToken;
+    private Mono<Map<String, RoleRepresentation>> realmRoles;
+
+    public ReactiveKeycloakClient(WebClient.Builder webClientBuilder, KeycloakCallLimiter callLimiter,
+                                  MeterRegistry meterRegistry) {
+        this.webClientBuilder = webClientBuilder;
+        this.callLimiter = callLimiter;
+        this.adminTokenFetches = meterRegistry.counter("keycloak.admin.token.fetches");
+    }
+
+    @PostConstruct
+    void init() {
+        connectionProvider = ConnectionProvider.builder("keycloak")
+                .maxConnections(maxConnections)
+                .pendingAcquireTimeout(Duration.ofMillis(poolAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofSeconds(idleEvictionSeconds))
+                .build();
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .responseTimeout(Duration.ofMillis(readTimeoutMs));
+        webClient = webClientBuilder
+                .baseUrl(authServerUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+
+        adminToken = fetchAdminToken()
+                .cache(token -> Duration.ofSeconds(Math.max(0, token.getExpiresIn() - minTokenValiditySeconds)),
+                        error -> Duration.ZERO,
+                        () -> Duration.ZERO)
+                .map(AccessTokenResponse::getToken);
+        realmRoles = fetchRealmRoles()
+                .cache(roles -> Duration.ofMillis(rolesRefreshIntervalMs), error -> Duration.ZERO, () -> Duration.ZERO);
+    }
+
+    @PreDestroy
+    void close() {
+        connectionProvider.dispose();
+    }
+
+    public Mono<AccessTokenResponse> passwordGrant(String username, String password) {
+        MultiValueMap<String, String> form = clientForm("password");
+        form.add("username", username);
+        form.add("password", password);
+        return callLimiter.callAsync(KeycloakOperation.LOGIN, postToken(realm, form));
+    }
+
+    public Mono<AccessTokenResponse> refreshGrant(String refreshToken) {
+        MultiValueMap<String, String> form = clientForm("refresh_token");
+        form.add("refresh_token", refreshToken);
+        return callLimiter.callAsync(KeycloakOperation.REFRESH, postToken(realm, form));
+    }
+
+    public Mono<Boolean> usernameExists(String username) {
+        return admin(adminToken.flatMap(token -> webClient.get()
+                .uri(uri -> uri.path("/admin/realms/{realm}/users")
+                        .queryParam("username", username)
+                        .queryParam("exact", true)
+                        .queryParam("max", 1)
+                        .queryParam("briefRepresentation", true)
+                        .build(realm))
+                .headers(headers -> headers.setBearerAuth(token))
+                .retrieve()
+                .bodyToMono(USER_LIST)
+                .map(users -> !users.isEmpty())));
+    }
+
+    public Mono<Boolean> emailExists(String email) {
+        return admin(adminToken.flatMap(token -> webClient.get()
+                .uri(uri -> uri.path("/admin/realms/{realm}/users")
+                        .queryParam("email", email)
+                        .queryParam("exact", true)
+                        .queryParam("max", 1)
+                        .queryParam("briefRepresentation", true)
+                        .build(realm))
+                .headers(headers -> headers.setBearerAuth(token))
+                .retrieve()
+                .bodyToMono(USER_LIST)
+                .map(users -> !users.isEmpty())));
+    }
+
+    /**
+     * @return the id of the created user
+     */
+    public Mono<String> createUser(UserRepresentation user) {
+        return admin(adminToken.flatMap(token -> webClient.post()
+                .uri("/admin/realms/{realm}/users", realm)
+                .headers(headers -> headers.setBearerAuth(token))
+                .bodyValue(user)
+                .exchangeToMono(response -> {
+                    if (response.statusCode() == HttpStatus.CONFLICT) {
+                        return response.releaseBody().then(Mono.error(new UserAlreadyExistsException("User already exists")));
+                    }
+                    if (response.statusCode() != HttpStatus.CREATED) {
+                        return response.releaseBody().then(Mono.error(new ResponseStatusException(
+                                HttpStatus.INTERNAL_SERVER_ERROR, "Failed to create user in Keycloak")));
+                    }
+                    String location = response.headers().asHttpHeaders().getFirst(HttpHeaders.LOCATION);
+                    return response.releaseBody()
+                            .then(Mono.just(location.substring(location.lastIndexOf('/') + 1)));
+                })));
+    }
+
+    public Mono<Void> assignRealmRoles(String userId, List<String> roleNames) {
+        return admin(Mono.zip(adminToken, realmRoles)
+                .flatMap(tuple -> {
+                    List<RoleRepresentation> roles = roleNames.stream()
+                            .map(name -> {
+                                RoleRepresentation role = tuple.getT2().get(name);
+                                if (role == null) {
+                                    throw new IllegalStateException("Realm role not found: " + name);
+                                }
+                                return role;
+                            })
+                            .collect(Collectors.toList());
+                    return webClient.post()
+                            .uri("/admin/realms/{realm}/users/{id}/role-mappings/realm", realm, userId)
+                            .headers(headers -> headers.setBearerAuth(tuple.getT1()))
+                            .bodyValue(roles)
+                            .retrieve()
+                            .toBodilessEntity();
+                })
+                .then());
+    }
+
+    private <T> Mono<T> admin(Mono<T> call) {
+        return callLimiter.callAsync(KeycloakOperation.ADMIN, call);
+    }
+
+    private Mono<AccessTokenResponse> fetchAdminToken() {
+        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+        form.add("grant_type", "password");
+        form.add("client_id", adminClientId);
+        form.add("username", adminUsername);
+        form.add("password", adminPassword);
+        return Mono.defer(() -> {
+            adminTokenFetches.increment();
+            return postToken(adminRealm, form);
+        });
+    }
+
+    private Mono<Map<String, RoleRepresentation>> fetchRealmRoles() {
+        return adminToken.flatMap(token -> webClient.get()
+                .uri("/admin/realms/{realm}/roles", realm)
+                .headers(headers -> headers.setBearerAuth(token))
+                .retrieve()
+                .bodyToMono(ROLE_LIST)
+                .map(roles -> roles.stream()
+                        .collect(Collectors.toUnmodifiableMap(RoleRepresentation::getName, Function.identity()))));
+    }
+
+    private MultiValueMap<String, String> clientForm(String grantType) {
+        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+        form.add("grant_type", grantType);
+        form.add("client_id", clientId);
+        form.add("client_secret", clientSecret);
+        return form;
+    }
+
+    private Mono<AccessTokenResponse> postToken(String tokenRealm, MultiValueMap<String, String> form) {
+        return webClient.post()
+                .uri("/realms/{realm}/protocol/openid-connect/token", tokenRealm)
+                .body(BodyInserters.fromFormData(form))
+                .retrieve()
+                .bodyToMono(AccessTokenResponse.class);
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.api.config;
+
+import com.example.api.metrics.StageTimer;
+import com.example.api.security.CachingJwtDecoder;
+import com.example.api.security.JwksManager;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+
+import java.time.Duration;
+
+@Configuration
+@RequiredArgsConstructor
+public class JwtDecoderConfig {
+
+    private final JwksManager jwksManager;
+
+    @Value("${jwt.cache.maximum-size:50000}")
+    private long jwtCacheMaximumSize;
+
+    @Value("${jwt.cache.max-ttl-seconds:300}")
+    private long jwtCacheMaxTtlSeconds;
+
+    @Bean
+    public CachingJwtDecoder jwtDecoder(MeterRegistry meterRegistry, StageTimer stageTimer) {
+        CachingJwtDecoder decoder = new CachingJwtDecoder(
+                verifyingDecoder(jwksManager),
+                jwtCacheMaximumSize,
+                Duration.ofSeconds(jwtCacheMaxTtlSeconds),
+                meterRegistry,
+                stageTimer);
+        jwksManager.addRotationListener(decoder::invalidateAll);
+        return decoder;
+    }
+
+    static NimbusJwtDecoder verifyingDecoder(JWKSource<SecurityContext> keySource) {
+        DefaultJWTProcessor<SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
+        jwtProcessor.setJWSKeySelector(new JWSVerificationKeySelector<>(JWSAlgorithm.RS256, keySource));
+        // Claims are validated by Spring Security's OAuth2TokenValidator, not by Nimbus
+        jwtProcessor.setJWTClaimsSetVerifier((claims, context) -> {
+        });
+        return new NimbusJwtDecoder(jwtProcessor);
+    }
+}
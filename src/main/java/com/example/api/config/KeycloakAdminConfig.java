@@ -0,0 +1,118 @@
+package com.example.api.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.jboss.resteasy.client.jaxrs.ResteasyClient;
+import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
+import org.keycloak.admin.client.Keycloak;
+import org.keycloak.admin.client.KeycloakBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class KeycloakAdminConfig {
+
+    private static final String TOKEN_ENDPOINT_SUFFIX = "/protocol/openid-connect/token";
+
+    @Value("${keycloak.auth-server-url}")
+    private String authServerUrl;
+
+    @Value("${keycloak-client.admin.realm:master}")
+    private String adminRealm;
+
+    @Value("${keycloak-client.admin.client-id:admin-cli}")
+    private String adminClientId;
+
+    @Value("${keycloak-client.admin.username:admin}")
+    private String adminUsername;
+
+    @Value("${keycloak-client.admin.password:admin}")
+    private String adminPassword;
+
+    @Value("${keycloak-client.admin.pool-size:20}")
+    private int poolSize;
+
+    @Value("${keycloak-client.admin.connect-timeout-ms:2000}")
+    private long connectTimeoutMs;
+
+    @Value("${keycloak-client.operations.admin.timeout-ms:5000}")
+    private long readTimeoutMs;
+
+    @Value("${keycloak-client.admin.connection-ttl-seconds:300}")
+    private long connectionTtlSeconds;
+
+    @Value("${keycloak-client.admin.min-token-validity-seconds:30}")
+    private long minTokenValiditySeconds;
+
+    @Value("${keycloak-client.batch.timeout-ms:120000}")
+    private long batchReadTimeoutMs;
+
+    @Value("${keycloak-client.batch.pool-size:2}")
+    private int batchPoolSize;
+
+    /**
+     * Single admin client shared by all admin operations. The underlying RESTEasy client keeps a
+     * pooled set of keep-alive connections, and the token manager renews the master-realm admin
+     * token once it is within {@code min-token-validity-seconds} of expiring.
+     */
+    @Bean(destroyMethod = "close")
+    public Keycloak keycloakAdminClient(MeterRegistry meterRegistry) {
+        return build(poolSize, readTimeoutMs, meterRegistry);
+    }
+
+    /**
+     * Admin client for realm partial imports, which can take far longer than the other admin calls.
+     * Injected by name, like {@code keycloakAdminClient}.
+     */
+    @Bean(destroyMethod = "close")
+    public Keycloak keycloakBatchAdminClient(MeterRegistry meterRegistry) {
+        return build(batchPoolSize, batchReadTimeoutMs, meterRegistry);
+    }
+
+    private Keycloak build(int poolSize, long readTimeoutMs, MeterRegistry meterRegistry) {
+        Counter tokenFetches = Counter.builder("keycloak.admin.token.fetches")
+                .description("Admin token grants and refreshes sent to Keycloak")
+                .register(meterRegistry);
+
+        ResteasyClient resteasyClient = new ResteasyClientBuilder()
+                .connectionPoolSize(poolSize)
+                .maxPooledPerRoute(poolSize)
+                .connectionTTL(connectionTtlSeconds, TimeUnit.SECONDS)
+                .connectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+                .register(new TokenRequestCounter(tokenFetches))
+                .build();
+
+        Keycloak keycloak = KeycloakBuilder.builder()
+                .serverUrl(authServerUrl)
+                .realm(adminRealm)
+                .clientId(adminClientId)
+                .username(adminUsername)
+                .password(adminPassword)
+                .resteasyClient(resteasyClient)
+                .build();
+        keycloak.tokenManager().setMinTokenValidity(minTokenValiditySeconds);
+        return keycloak;
+    }
+
+    private static class TokenRequestCounter implements ClientRequestFilter {
+
+        private final Counter counter;
+
+        TokenRequestCounter(Counter counter) {
+            this.counter = counter;
+        }
+
+        @Override
+        public void filter(ClientRequestContext requestContext) {
+            if (requestContext.getUri().getPath().endsWith(TOKEN_ENDPOINT_SUFFIX)) {
+                counter.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.api.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+
+@Configuration
+public class KeycloakExecutorConfig {
+
+    @Value("${keycloak-client.executor.pool-size:16}")
+    private int poolSize;
+
+    @Value("${keycloak-client.executor.queue-capacity:500}")
+    private int queueCapacity;
+
+    /**
+     * Runs blocking Keycloak calls that a request fans out in parallel.
+     */
+    @Bean
+    @Profile("!virtual-threads")
+    public Executor keycloakExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("keycloak-");
+        executor.initialize();
+        return executor;
+    }
+}
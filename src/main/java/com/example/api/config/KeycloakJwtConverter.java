@@ -1,43 +1,75 @@
 package com.example.api.config;
 
+import com.example.api.security.KeycloakAuthenticationToken;
+import com.example.api.security.RoleBitRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.security.authentication.AbstractAuthenticationToken;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.oauth2.jwt.Jwt;
-import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
-import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
 import org.springframework.stereotype.Component;
 
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Maps Keycloak tokens to authorities: {@code SCOPE_x} for each entry of the {@code scope}/{@code scp}
+ * claim (as the default {@code JwtGrantedAuthoritiesConverter} does) plus {@code ROLE_x} for each client
+ * role in {@code resource_access.<resource-id>.roles}. Every authority string is backed by one shared
+ * instance, and each distinct scope/role combination resolves to one cached immutable set together
+ * with the role bitmask used by {@link com.example.api.security.RoleAuthorizationInterceptor}.
+ */
 @Component
 public class KeycloakJwtConverter implements Converter<Jwt, AbstractAuthenticationToken> {
 
-    private final JwtGrantedAuthoritiesConverter defaultGrantedAuthoritiesConverter = new JwtGrantedAuthoritiesConverter();
+    private static final String[] SCOPE_CLAIM_NAMES = {"scope", "scp"};
+    private static final String SCOPE_PREFIX = "SCOPE_";
+    private static final String ROLE_PREFIX = "ROLE_";
 
-    @Value("${jwt.auth.converter.resource-id}")
-    private String resourceId;
+    private final String resourceId;
+    private final String principalAttribute;
 
-    @Value("${jwt.auth.converter.principal-attribute}")
-    private String principalAttribute;
+    private final ConcurrentMap<String, GrantedAuthority> scopeAuthorities = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, GrantedAuthority> roleAuthorities = new ConcurrentHashMap<>();
+    private final Cache<ClaimKey, ResolvedAuthorities> authoritySets = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .build();
+
+    private final RoleBitRegistry roleBitRegistry;
+
+    public KeycloakJwtConverter(@Value("${jwt.auth.converter.resource-id}") String resourceId,
+                                @Value("${jwt.auth.converter.principal-attribute}") String principalAttribute,
+                                RoleBitRegistry roleBitRegistry) {
+        this.resourceId = resourceId;
+        this.principalAttribute = principalAttribute;
+        this.roleBitRegistry = roleBitRegistry;
+    }
 
     @Override
     public AbstractAuthenticationToken convert(Jwt jwt) {
-        Collection<GrantedAuthority> authorities = Stream.concat(
-                defaultGrantedAuthoritiesConverter.convert(jwt).stream(),
-                extractResourceRoles(jwt).stream()
-        ).collect(Collectors.toSet());
+        Object scopes = getScopes(jwt);
+        Collection<String> roles = getResourceRoles(jwt);
+        ClaimKey key = new ClaimKey(scopes, roles);
+
+        ResolvedAuthorities resolved = authoritySets.getIfPresent(key);
+        if (resolved == null || resolved.registryVersion != roleBitRegistry.version()) {
+            resolved = resolve(scopes, roles);
+            authoritySets.put(key, resolved);
+        }
 
-        return new JwtAuthenticationToken(
+        return new KeycloakAuthenticationToken(
                 jwt,
-                authorities,
-                getPrincipalClaimName(jwt)
+                resolved.authorities,
+                getPrincipalClaimName(jwt),
+                resolved.roleMask
         );
     }
 
@@ -46,29 +78,111 @@ public class KeycloakJwtConverter implements Converter<Jwt, AbstractAuthenticati
         return jwt.getClaim(claimName);
     }
 
-    private Collection<? extends GrantedAuthority> extractResourceRoles(Jwt jwt) {
+    private Object getScopes(Jwt jwt) {
+        Map<String, Object> claims = jwt.getClaims();
+        for (String claimName : SCOPE_CLAIM_NAMES) {
+            Object scopes = claims.get(claimName);
+            if (scopes instanceof String && !((String) scopes).isEmpty()) {
+                return scopes;
+            }
+            if (scopes instanceof Collection && !((Collection<?>) scopes).isEmpty()) {
+                return scopes;
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Collection<String> getResourceRoles(Jwt jwt) {
         Map<String, Object> resourceAccess = jwt.getClaim("resource_access");
         
         if (resourceAccess == null) {
-            return Set.of();
+            return null;
         }
         
-        @SuppressWarnings("unchecked")
         Map<String, Object> resource = (Map<String, Object>) resourceAccess.get(resourceId);
         
         if (resource == null) {
-            return Set.of();
+            return null;
         }
         
-        @SuppressWarnings("unchecked")
-        Collection<String> roles = (Collection<String>) resource.get("roles");
-        
-        if (roles == null) {
-            return Set.of();
+        return (Collection<String>) resource.get("roles");
+    }
+
+    private ResolvedAuthorities resolve(Object scopes, Collection<String> roles) {
+        long registryVersion = roleBitRegistry.version();
+        return new ResolvedAuthorities(buildAuthorities(scopes, roles), roleBitRegistry.maskOf(roles), registryVersion);
+    }
+
+    private Set<GrantedAuthority> buildAuthorities(Object scopes, Collection<String> roles) {
+        Set<GrantedAuthority> authorities = new HashSet<>();
+        if (scopes instanceof String) {
+            for (String scope : ((String) scopes).split(" ")) {
+                if (!scope.isEmpty()) {
+                    authorities.add(intern(scopeAuthorities, SCOPE_PREFIX, scope));
+                }
+            }
+        } else if (scopes instanceof Collection) {
+            for (Object scope : (Collection<?>) scopes) {
+                authorities.add(intern(scopeAuthorities, SCOPE_PREFIX, String.valueOf(scope)));
+            }
+        }
+        if (roles != null) {
+            for (String role : roles) {
+                authorities.add(intern(roleAuthorities, ROLE_PREFIX, role));
+            }
+        }
+        return Set.copyOf(authorities);
+    }
+
+    private static GrantedAuthority intern(ConcurrentMap<String, GrantedAuthority> table, String prefix, String name) {
+        GrantedAuthority authority = table.get(name);
+        if (authority == null) {
+            authority = table.computeIfAbsent(name, n -> new SimpleGrantedAuthority(prefix + n));
+        }
+        return authority;
+    }
+
+    private static final class ResolvedAuthorities {
+
+        private final Set<GrantedAuthority> authorities;
+        private final long roleMask;
+        private final long registryVersion;
+
+        ResolvedAuthorities(Set<GrantedAuthority> authorities, long roleMask, long registryVersion) {
+            this.authorities = authorities;
+            this.roleMask = roleMask;
+            this.registryVersion = registryVersion;
+        }
+    }
+
+    private static final class ClaimKey {
+
+        private final Object scopes;
+        private final Collection<String> roles;
+        private final int hash;
+
+        ClaimKey(Object scopes, Collection<String> roles) {
+            this.scopes = scopes;
+            this.roles = roles;
+            this.hash = 31 * Objects.hashCode(scopes) + Objects.hashCode(roles);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ClaimKey)) {
+                return false;
+            }
+            ClaimKey other = (ClaimKey) o;
+            return hash == other.hash && Objects.equals(scopes, other.scopes) && Objects.equals(roles, other.roles);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
         }
-        
-        return roles.stream()
-                .map(role -> new SimpleGrantedAuthority("ROLE_" + role))
-                .collect(Collectors.toSet());
     }
 }
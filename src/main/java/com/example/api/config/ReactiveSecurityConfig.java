@@ -0,0 +1,70 @@
+package com.example.api.config;
+
+import com.example.api.metrics.StageTimer;
+import com.example.api.repository.ReactiveUserRepository;
+import com.example.api.security.CachingJwtDecoder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.repository.config.EnableReactiveMongoRepositories;
+import org.springframework.security.authorization.AuthenticatedReactiveAuthorizationManager;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.security.oauth2.server.resource.authentication.ReactiveJwtAuthenticationConverterAdapter;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+@Configuration
+@Profile("reactive")
+@EnableWebFluxSecurity
+@EnableReactiveMongoRepositories(basePackageClasses = ReactiveUserRepository.class)
+@RequiredArgsConstructor
+public class ReactiveSecurityConfig {
+
+    private final KeycloakJwtConverter keycloakJwtConverter;
+    private final StageTimer stageTimer;
+
+    @Value("${metrics.prometheus.unauthenticated-scrape:false}")
+    private boolean unauthenticatedScrape;
+
+    /**
+     * Adapts the shared caching decoder rather than building a second key pipeline. A token signed
+     * with an unknown key makes the JWKS manager refetch the key set over blocking HTTP, so decoding
+     * runs on the bounded elastic scheduler, never on the event loop.
+     */
+    @Bean
+    public ReactiveJwtDecoder reactiveJwtDecoder(CachingJwtDecoder jwtDecoder) {
+        return token -> Mono.fromCallable(() -> jwtDecoder.decode(token))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Bean
+    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http) {
+        http
+            .csrf().disable()
+            .cors()
+            .and()
+            .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+            .authorizeExchange()
+            .pathMatchers("/auth/**").permitAll()
+            .pathMatchers("/api-docs/**", "/swagger-ui/**", "/swagger-ui.html").permitAll()
+            .pathMatchers("/actuator/health", "/actuator/health/**").permitAll()
+            .pathMatchers("/actuator/prometheus").access(unauthenticatedScrape
+                    ? (authentication, context) -> Mono.just(new AuthorizationDecision(true))
+                    : AuthenticatedReactiveAuthorizationManager.authenticated())
+            .anyExchange().authenticated()
+            .and()
+            .oauth2ResourceServer()
+            .jwt()
+            .jwtAuthenticationConverter(new ReactiveJwtAuthenticationConverterAdapter(
+                    jwt -> stageTimer.record("jwt.convert", "authenticate", () -> keycloakJwtConverter.convert(jwt))));
+
+        return http.build();
+    }
+}
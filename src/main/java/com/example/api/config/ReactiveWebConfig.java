@@ -0,0 +1,47 @@
+package com.example.api.config;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.connection.netty.NettyStreamFactoryFactory;
+import io.netty.channel.nio.NioEventLoopGroup;
+import org.springframework.boot.autoconfigure.mongo.MongoProperties;
+import org.springframework.boot.autoconfigure.mongo.MongoPropertiesClientSettingsBuilderCustomizer;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+
+@Configuration
+@Profile("reactive")
+public class ReactiveWebConfig {
+
+    /**
+     * Tomcat is still on the classpath for the servlet stack and would otherwise be picked ahead of Netty.
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    /**
+     * One event loop group for both MongoDB clients. Left to Spring Boot, the Netty driver setup also
+     * runs for the blocking client and creates a second group that is never shut down, which keeps
+     * the JVM alive after the context closes.
+     */
+    @Bean(destroyMethod = "shutdownGracefully")
+    public NioEventLoopGroup mongoEventLoopGroup() {
+        return new NioEventLoopGroup();
+    }
+
+    /**
+     * Replaces Spring Boot's default settings, so the {@code spring.data.mongodb.*} properties are applied here.
+     */
+    @Bean
+    public MongoClientSettings mongoClientSettings(NioEventLoopGroup mongoEventLoopGroup, MongoProperties properties,
+                                                   Environment environment) {
+        MongoClientSettings.Builder builder = MongoClientSettings.builder()
+                .streamFactoryFactory(NettyStreamFactoryFactory.builder().eventLoopGroup(mongoEventLoopGroup).build());
+        new MongoPropertiesClientSettingsBuilderCustomizer(properties, environment).customize(builder);
+        return builder.build();
+    }
+}
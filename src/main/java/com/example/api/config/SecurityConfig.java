@@ -1,35 +1,29 @@
 package com.example.api.config;
 
+import com.example.api.metrics.StageTimer;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.oauth2.jwt.JwtDecoder;
-import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
 import org.springframework.security.web.SecurityFilterChain;
 
 @Configuration
+@Profile("!reactive")
 @EnableWebSecurity
 @EnableGlobalMethodSecurity(prePostEnabled = true)
 @RequiredArgsConstructor
 public class SecurityConfig {
 
     private final KeycloakJwtConverter keycloakJwtConverter;
-    
-    @Value("${keycloak.auth-server-url}")
-    private String keycloakServerUrl;
-    
-    @Value("${keycloak.realm}")
-    private String realm;
+    private final StageTimer stageTimer;
 
-    @Bean
-    public JwtDecoder jwtDecoder() {
-        return NimbusJwtDecoder.withJwkSetUri(keycloakServerUrl + "/realms/" + realm + "/protocol/openid-connect/certs").build();
-    }
+    @Value("${metrics.prometheus.unauthenticated-scrape:false}")
+    private boolean unauthenticatedScrape;
 
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
@@ -43,12 +37,13 @@ public class SecurityConfig {
             .authorizeRequests()
             .antMatchers("/auth/**").permitAll()
             .antMatchers("/api-docs/**", "/swagger-ui/**", "/swagger-ui.html").permitAll()
-            .antMatchers("/actuator/health").permitAll()
+            .antMatchers("/actuator/health", "/actuator/health/**").permitAll()
+            .antMatchers("/actuator/prometheus").access(unauthenticatedScrape ? "permitAll" : "authenticated")
             .anyRequest().authenticated()
             .and()
             .oauth2ResourceServer()
             .jwt()
-            .jwtAuthenticationConverter(keycloakJwtConverter);
+            .jwtAuthenticationConverter(jwt -> stageTimer.record("jwt.convert", "authenticate", () -> keycloakJwtConverter.convert(jwt)));
 
         return http.build();
     }
@@ -0,0 +1,40 @@
+package com.example.api.config;
+
+import com.example.api.util.VirtualThreads;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Serves requests, and the Keycloak calls they fan out, on virtual threads (JDK 21+). Blocking
+ * Keycloak calls then park cheaply instead of holding a platform thread; the outbound concurrency
+ * is bounded by {@link com.example.api.client.KeycloakCallLimiter}.
+ */
+@Configuration
+@Profile("virtual-threads")
+@Slf4j
+public class VirtualThreadConfig {
+
+    /**
+     * A bean so the context shuts it down on close; Tomcat does not shut down an executor it was given.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService httpVirtualThreadExecutor() {
+        return VirtualThreads.newThreadPerTaskExecutor("http-vt-");
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(ExecutorService httpVirtualThreadExecutor) {
+        log.info("Serving requests on virtual threads");
+        return protocolHandler -> protocolHandler.setExecutor(httpVirtualThreadExecutor);
+    }
+
+    @Bean(name = "keycloakExecutor", destroyMethod = "shutdown")
+    public ExecutorService virtualThreadKeycloakExecutor() {
+        return VirtualThreads.newThreadPerTaskExecutor("keycloak-vt-");
+    }
+}
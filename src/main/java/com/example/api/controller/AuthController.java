@@ -1,37 +1,83 @@
 package com.example.api.controller;
 
 import com.example.api.dto.AuthResponse;
+import com.example.api.dto.AvailabilityResponse;
+import com.example.api.dto.BatchRegistrationResponse;
 import com.example.api.dto.LoginRequest;
+import com.example.api.dto.ReconciliationStatus;
 import com.example.api.dto.UserProfileResponse;
 import com.example.api.dto.UserRegistrationRequest;
+import com.example.api.security.LoginThrottle;
+import com.example.api.security.RequiresRoles;
+import com.example.api.service.BatchRegistrationService;
 import com.example.api.service.KeycloakService;
+import com.example.api.service.UserReconciliationJob;
 import com.example.api.service.UserService;
+import com.example.api.service.VersionedUserProfile;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
+import java.util.List;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/auth")
 @RequiredArgsConstructor
 public class AuthController {
 
     private final KeycloakService keycloakService;
     private final UserService userService;
+    private final BatchRegistrationService batchRegistrationService;
+    private final LoginThrottle loginThrottle;
+    private final UserReconciliationJob reconciliationJob;
 
     @PostMapping("/register")
-    public ResponseEntity<AuthResponse> registerUser(@Valid @RequestBody UserRegistrationRequest request) {
+    public ResponseEntity<AuthResponse> registerUser(@Valid @RequestBody UserRegistrationRequest request,
+                                                     HttpServletRequest httpRequest) {
+        loginThrottle.acquire(request.getUsername(), httpRequest.getRemoteAddr());
         AuthResponse response = keycloakService.registerUser(request);
         return new ResponseEntity<>(response, HttpStatus.CREATED);
     }
 
+    @PostMapping("/register/batch")
+    @RequiresRoles("admin")
+    public ResponseEntity<BatchRegistrationResponse> registerUsers(@RequestBody List<UserRegistrationRequest> requests) {
+        BatchRegistrationResponse response = batchRegistrationService.registerUsers(requests);
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/reconciliation")
+    @RequiresRoles("admin")
+    public ResponseEntity<ReconciliationStatus> startReconciliation() {
+        HttpStatus status = reconciliationJob.start() ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT;
+        return ResponseEntity.status(status).body(reconciliationJob.status());
+    }
+
+    @GetMapping("/reconciliation")
+    @RequiresRoles("admin")
+    public ResponseEntity<ReconciliationStatus> getReconciliationStatus() {
+        return ResponseEntity.ok(reconciliationJob.status());
+    }
+
+    @GetMapping("/availability")
+    public ResponseEntity<AvailabilityResponse> checkAvailability(@RequestParam(required = false) String username,
+                                                                  @RequestParam(required = false) String email) {
+        AvailabilityResponse response = userService.checkAvailability(username, email);
+        return ResponseEntity.ok(response);
+    }
+
     @PostMapping("/login")
-    public ResponseEntity<AuthResponse> loginUser(@Valid @RequestBody LoginRequest request) {
+    public ResponseEntity<AuthResponse> loginUser(@Valid @RequestBody LoginRequest request,
+                                                  HttpServletRequest httpRequest) {
+        loginThrottle.acquire(request.getUsername(), httpRequest.getRemoteAddr());
         AuthResponse response = keycloakService.authenticateUser(request);
         return ResponseEntity.ok(response);
     }
@@ -43,18 +89,28 @@ public class AuthController {
     }
 
     @GetMapping("/profile")
-    @PreAuthorize("hasRole('user')")
+    @RequiresRoles("user")
     public ResponseEntity<UserProfileResponse> getUserProfile() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         String username = authentication.getName();
-        UserProfileResponse userProfile = userService.getUserProfileByUsername(username);
-        return ResponseEntity.ok(userProfile);
+        return conditionalProfile(userService.getUserProfileByUsername(username));
     }
 
     @GetMapping("/profile/{userId}")
-    @PreAuthorize("hasRole('admin')")
+    @RequiresRoles("admin")
     public ResponseEntity<UserProfileResponse> getUserProfileByAdmin(@PathVariable String userId) {
-        UserProfileResponse userProfile = userService.getUserProfile(userId);
-        return ResponseEntity.ok(userProfile);
+        return conditionalProfile(userService.getUserProfile(userId));
+    }
+
+    /**
+     * Spring answers a matching {@code If-None-Match} with 304 and skips writing the body. The
+     * Cache-Control header replaces Spring Security's {@code no-store}, which would stop browsers
+     * from keeping the response to revalidate.
+     */
+    static ResponseEntity<UserProfileResponse> conditionalProfile(VersionedUserProfile profile) {
+        return ResponseEntity.ok()
+                .eTag(profile.getETag())
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(profile.getProfile());
     }
 }
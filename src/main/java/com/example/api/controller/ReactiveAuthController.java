@@ -0,0 +1,121 @@
+package com.example.api.controller;
+
+import com.example.api.dto.AuthResponse;
+import com.example.api.dto.AvailabilityResponse;
+import com.example.api.dto.BatchRegistrationResponse;
+import com.example.api.dto.LoginRequest;
+import com.example.api.dto.ReconciliationStatus;
+import com.example.api.dto.UserProfileResponse;
+import com.example.api.dto.UserRegistrationRequest;
+import com.example.api.security.LoginThrottle;
+import com.example.api.security.RequiresRoles;
+import com.example.api.service.BatchRegistrationService;
+import com.example.api.service.ReactiveKeycloakService;
+import com.example.api.service.ReactiveUserService;
+import com.example.api.service.UserReconciliationJob;
+import com.example.api.service.UserService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.validation.Valid;
+import java.net.InetSocketAddress;
+import java.security.Principal;
+import java.util.List;
+
+/**
+ * WebFlux variant of {@link AuthController}, serving the same endpoints under the {@code reactive} profile.
+ * Batch registration, availability checks and reconciliation still use the blocking services and run on the bounded elastic scheduler.
+ */
+@RestController
+@Profile("reactive")
+@RequestMapping("/auth")
+@RequiredArgsConstructor
+public class ReactiveAuthController {
+
+    private final ReactiveKeycloakService keycloakService;
+    private final ReactiveUserService reactiveUserService;
+    private final UserService userService;
+    private final BatchRegistrationService batchRegistrationService;
+    private final LoginThrottle loginThrottle;
+    private final UserReconciliationJob reconciliationJob;
+
+    @PostMapping("/register")
+    public Mono<ResponseEntity<AuthResponse>> registerUser(@Valid @RequestBody UserRegistrationRequest request,
+                                                           ServerHttpRequest httpRequest) {
+        loginThrottle.acquire(request.getUsername(), clientIp(httpRequest));
+        return keycloakService.registerUser(request)
+                .map(response -> new ResponseEntity<>(response, HttpStatus.CREATED));
+    }
+
+    @PostMapping("/register/batch")
+    @RequiresRoles("admin")
+    public Mono<ResponseEntity<BatchRegistrationResponse>> registerUsers(@RequestBody List<UserRegistrationRequest> requests) {
+        return Mono.fromCallable(() -> batchRegistrationService.registerUsers(requests))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/reconciliation")
+    @RequiresRoles("admin")
+    public Mono<ResponseEntity<ReconciliationStatus>> startReconciliation() {
+        return Mono.fromCallable(() -> {
+                    HttpStatus status = reconciliationJob.start() ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT;
+                    return ResponseEntity.status(status).body(reconciliationJob.status());
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @GetMapping("/reconciliation")
+    @RequiresRoles("admin")
+    public Mono<ResponseEntity<ReconciliationStatus>> getReconciliationStatus() {
+        return Mono.fromCallable(reconciliationJob::status)
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(ResponseEntity::ok);
+    }
+
+    @GetMapping("/availability")
+    public Mono<ResponseEntity<AvailabilityResponse>> checkAvailability(@RequestParam(required = false) String username,
+                                                                        @RequestParam(required = false) String email) {
+        return Mono.fromCallable(() -> userService.checkAvailability(username, email))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/login")
+    public Mono<ResponseEntity<AuthResponse>> loginUser(@Valid @RequestBody LoginRequest request,
+                                                        ServerHttpRequest httpRequest) {
+        loginThrottle.acquire(request.getUsername(), clientIp(httpRequest));
+        return keycloakService.authenticateUser(request).map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/refresh")
+    public Mono<ResponseEntity<AuthResponse>> refreshToken(@RequestBody String refreshToken) {
+        return keycloakService.refreshToken(refreshToken).map(ResponseEntity::ok);
+    }
+
+    @GetMapping("/profile")
+    @RequiresRoles("user")
+    public Mono<ResponseEntity<UserProfileResponse>> getUserProfile(Mono<Principal> principal) {
+        return principal
+                .flatMap(user -> reactiveUserService.getUserProfileByUsername(user.getName()))
+                .map(AuthController::conditionalProfile);
+    }
+
+    @GetMapping("/profile/{userId}")
+    @RequiresRoles("admin")
+    public Mono<ResponseEntity<UserProfileResponse>> getUserProfileByAdmin(@PathVariable String userId) {
+        return reactiveUserService.getUserProfile(userId).map(AuthController::conditionalProfile);
+    }
+
+    // Same value as HttpServletRequest.getRemoteAddr()
+    private static String clientIp(ServerHttpRequest request) {
+        InetSocketAddress address = request.getRemoteAddress();
+        return address == null || address.getAddress() == null ? null : address.getAddress().getHostAddress();
+    }
+}
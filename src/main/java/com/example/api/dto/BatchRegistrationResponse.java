@@ -0,0 +1,20 @@
+package com.example.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchRegistrationResponse {
+    private int created;
+    private int pending;
+    private int skipped;
+    private int failed;
+    private List<BatchRegistrationResult> results;
+}
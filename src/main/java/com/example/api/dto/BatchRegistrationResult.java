@@ -0,0 +1,27 @@
+package com.example.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchRegistrationResult {
+
+    public enum Status {
+        CREATED,
+        // Created in Keycloak and journaled; written to MongoDB in the background
+        PENDING,
+        SKIPPED,
+        FAILED
+    }
+
+    private int index;
+    private String username;
+    private Status status;
+    private String userId;
+    private String message;
+}
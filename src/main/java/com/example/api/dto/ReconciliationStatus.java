@@ -0,0 +1,28 @@
+package com.example.api.dto;
+
+import com.example.api.model.ReconciliationCheckpoint;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReconciliationStatus {
+    // Whether this instance is running the job right now
+    private boolean running;
+    private ReconciliationCheckpoint.State state;
+    private LocalDateTime runStartedAt;
+    private LocalDateTime completedAt;
+    private int pagesDone;
+    private boolean pagesComplete;
+    private long inserted;
+    private long updated;
+    private long tombstoned;
+    private long conflicts;
+    private String error;
+}
@@ -0,0 +1,13 @@
+package com.example.api.exception;
+
+/**
+ * Base of the exceptions that end a request with an expected 4xx/5xx answer. They are thrown often,
+ * once per bad password or unknown id, and are fully described by their type and message, so they
+ * capture no stack trace and take no suppressed exceptions.
+ */
+public abstract class DomainException extends RuntimeException {
+
+    protected DomainException(String message) {
+        super(message, null, false, false);
+    }
+}
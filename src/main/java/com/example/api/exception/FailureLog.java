@@ -0,0 +1,80 @@
+package com.example.api.exception;
+
+import com.example.api.util.TokenBucketTable;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts and logs the failures the exception handlers answer. Expected failures (bad credentials,
+ * unknown ids, throttling, Keycloak outages) are logged without a stack trace and sampled per
+ * exception type: a burst of lines, then at most one per refill interval, each noting how many were
+ * suppressed since the previous one. Unexpected errors are always logged with their stack trace.
+ * Every failure is counted in {@code api.errors{exception,expected}}, logged or not.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class FailureLog {
+
+    @Value("${failure-log.burst:10}")
+    private int burst;
+
+    @Value("${failure-log.refill-interval-ms:1000}")
+    private long refillIntervalMs;
+
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<String, LongAdder> suppressed = new ConcurrentHashMap<>();
+    // "type:expected" -> counter, so a failure does not look its meter up in the registry
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private TokenBucketTable budget;
+
+    @PostConstruct
+    void init() {
+        budget = new TokenBucketTable(256, burst, refillIntervalMs);
+    }
+
+    /**
+     * @param detail what the log line reports after the description, usually the message
+     */
+    public void expected(Exception ex, String description, Object detail) {
+        String type = ex.getClass().getSimpleName();
+        counter(type, true).increment();
+        if (!log.isWarnEnabled()) {
+            return;
+        }
+        if (budget.tryAcquire(type) > 0) {
+            suppressed.computeIfAbsent(type, key -> new LongAdder()).increment();
+            return;
+        }
+        LongAdder skipped = suppressed.get(type);
+        long count = skipped == null ? 0 : skipped.sumThenReset();
+        if (count > 0) {
+            log.warn("{}: {} ({} similar suppressed)", description, detail, count);
+        } else {
+            log.warn("{}: {}", description, detail);
+        }
+    }
+
+    public void unexpected(Exception ex, String description) {
+        counter(ex.getClass().getSimpleName(), false).increment();
+        log.error("{}: {}", description, ex.getMessage(), ex);
+    }
+
+    private Counter counter(String type, boolean expected) {
+        return counters.computeIfAbsent(type + ":" + expected, key -> Counter.builder("api.errors")
+                .description("Failed requests by exception type")
+                .tag("exception", type)
+                .tag("expected", String.valueOf(expected))
+                .register(meterRegistry));
+    }
+}
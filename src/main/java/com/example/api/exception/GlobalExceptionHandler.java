@@ -3,7 +3,9 @@ package com.example.api.exception;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
@@ -13,19 +15,23 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
 
 @RestControllerAdvice
-@Slf4j
+@Profile("!reactive")
+@RequiredArgsConstructor
 public class GlobalExceptionHandler {
 
+    private final FailureLog failureLog;
+
     @ExceptionHandler(ResourceNotFoundException.class)
     @ResponseStatus(HttpStatus.NOT_FOUND)
     public ResponseEntity<ErrorResponse> handleResourceNotFoundException(ResourceNotFoundException ex, WebRequest request) {
-        log.error("Resource not found: {}", ex.getMessage());
+        failureLog.expected(ex, "Resource not found", ex.getMessage());
         return new ResponseEntity<>(
                 new ErrorResponse(
                         HttpStatus.NOT_FOUND.value(),
@@ -40,7 +46,7 @@ public class GlobalExceptionHandler {
     @ExceptionHandler(AuthenticationException.class)
     @ResponseStatus(HttpStatus.UNAUTHORIZED)
     public ResponseEntity<ErrorResponse> handleAuthenticationException(AuthenticationException ex, WebRequest request) {
-        log.error("Authentication error: {}", ex.getMessage());
+        failureLog.expected(ex, "Authentication error", ex.getMessage());
         return new ResponseEntity<>(
                 new ErrorResponse(
                         HttpStatus.UNAUTHORIZED.value(),
@@ -55,7 +61,7 @@ public class GlobalExceptionHandler {
     @ExceptionHandler(UserAlreadyExistsException.class)
     @ResponseStatus(HttpStatus.CONFLICT)
     public ResponseEntity<ErrorResponse> handleUserAlreadyExistsException(UserAlreadyExistsException ex, WebRequest request) {
-        log.error("User already exists: {}", ex.getMessage());
+        failureLog.expected(ex, "User already exists", ex.getMessage());
         return new ResponseEntity<>(
                 new ErrorResponse(
                         HttpStatus.CONFLICT.value(),
@@ -70,7 +76,7 @@ public class GlobalExceptionHandler {
     @ExceptionHandler(AccessDeniedException.class)
     @ResponseStatus(HttpStatus.FORBIDDEN)
     public ResponseEntity<ErrorResponse> handleAccessDeniedException(AccessDeniedException ex, WebRequest request) {
-        log.error("Access denied: {}", ex.getMessage());
+        failureLog.expected(ex, "Access denied", ex.getMessage());
         return new ResponseEntity<>(
                 new ErrorResponse(
                         HttpStatus.FORBIDDEN.value(),
@@ -82,6 +88,48 @@ public class GlobalExceptionHandler {
         );
     }
 
+    @ExceptionHandler(KeycloakUnavailableException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ResponseEntity<ErrorResponse> handleKeycloakUnavailableException(KeycloakUnavailableException ex, WebRequest request) {
+        failureLog.expected(ex, "Keycloak unavailable", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(new ErrorResponse(
+                        HttpStatus.SERVICE_UNAVAILABLE.value(),
+                        ex.getMessage(),
+                        request.getDescription(false),
+                        LocalDateTime.now()
+                ));
+    }
+
+    @ExceptionHandler(TooManyRequestsException.class)
+    @ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+    public ResponseEntity<ErrorResponse> handleTooManyRequestsException(TooManyRequestsException ex, WebRequest request) {
+        failureLog.expected(ex, "Throttled", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(new ErrorResponse(
+                        HttpStatus.TOO_MANY_REQUESTS.value(),
+                        ex.getMessage(),
+                        request.getDescription(false),
+                        LocalDateTime.now()
+                ));
+    }
+
+    @ExceptionHandler(ResponseStatusException.class)
+    public ResponseEntity<ErrorResponse> handleResponseStatusException(ResponseStatusException ex, WebRequest request) {
+        failureLog.expected(ex, "Request failed with status " + ex.getRawStatusCode(), ex.getReason());
+        return new ResponseEntity<>(
+                new ErrorResponse(
+                        ex.getRawStatusCode(),
+                        ex.getReason(),
+                        request.getDescription(false),
+                        LocalDateTime.now()
+                ),
+                ex.getStatus()
+        );
+    }
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public ResponseEntity<ValidationErrorResponse> handleValidationExceptions(MethodArgumentNotValidException ex, WebRequest request) {
@@ -92,7 +140,7 @@ public class GlobalExceptionHandler {
             errors.put(fieldName, errorMessage);
         });
 
-        log.error("Validation error: {}", errors);
+        failureLog.expected(ex, "Validation error", errors);
         return new ResponseEntity<>(
                 new ValidationErrorResponse(
                         HttpStatus.BAD_REQUEST.value(),
@@ -108,7 +156,7 @@ public class GlobalExceptionHandler {
     @ExceptionHandler(Exception.class)
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public ResponseEntity<ErrorResponse> handleGlobalException(Exception ex, WebRequest request) {
-        log.error("Internal server error: {}", ex.getMessage(), ex);
+        failureLog.unexpected(ex, "Internal server error");
         return new ResponseEntity<>(
                 new ErrorResponse(
                         HttpStatus.INTERNAL_SERVER_ERROR.value(),
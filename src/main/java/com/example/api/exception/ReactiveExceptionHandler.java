@@ -0,0 +1,117 @@
+package com.example.api.exception;
+
+import com.example.api.exception.GlobalExceptionHandler.ErrorResponse;
+import com.example.api.exception.GlobalExceptionHandler.ValidationErrorResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.validation.FieldError;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * WebFlux counterpart of {@link GlobalExceptionHandler}, producing the same error bodies.
+ */
+@RestControllerAdvice
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveExceptionHandler {
+
+    private final FailureLog failureLog;
+
+    @ExceptionHandler(ResourceNotFoundException.class)
+    public ResponseEntity<ErrorResponse> handleResourceNotFoundException(ResourceNotFoundException ex, ServerWebExchange exchange) {
+        failureLog.expected(ex, "Resource not found", ex.getMessage());
+        return error(HttpStatus.NOT_FOUND, ex.getMessage(), exchange);
+    }
+
+    @ExceptionHandler(AuthenticationException.class)
+    public ResponseEntity<ErrorResponse> handleAuthenticationException(AuthenticationException ex, ServerWebExchange exchange) {
+        failureLog.expected(ex, "Authentication error", ex.getMessage());
+        return error(HttpStatus.UNAUTHORIZED, ex.getMessage(), exchange);
+    }
+
+    @ExceptionHandler(UserAlreadyExistsException.class)
+    public ResponseEntity<ErrorResponse> handleUserAlreadyExistsException(UserAlreadyExistsException ex, ServerWebExchange exchange) {
+        failureLog.expected(ex, "User already exists", ex.getMessage());
+        return error(HttpStatus.CONFLICT, ex.getMessage(), exchange);
+    }
+
+    @ExceptionHandler(AccessDeniedException.class)
+    public ResponseEntity<ErrorResponse> handleAccessDeniedException(AccessDeniedException ex, ServerWebExchange exchange) {
+        failureLog.expected(ex, "Access denied", ex.getMessage());
+        return error(HttpStatus.FORBIDDEN, "You don't have permission to access this resource", exchange);
+    }
+
+    @ExceptionHandler(KeycloakUnavailableException.class)
+    public ResponseEntity<ErrorResponse> handleKeycloakUnavailableException(KeycloakUnavailableException ex, ServerWebExchange exchange) {
+        failureLog.expected(ex, "Keycloak unavailable", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(new ErrorResponse(HttpStatus.SERVICE_UNAVAILABLE.value(), ex.getMessage(), describe(exchange), LocalDateTime.now()));
+    }
+
+    @ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<ErrorResponse> handleTooManyRequestsException(TooManyRequestsException ex, ServerWebExchange exchange) {
+        failureLog.expected(ex, "Throttled", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(new ErrorResponse(HttpStatus.TOO_MANY_REQUESTS.value(), ex.getMessage(), describe(exchange), LocalDateTime.now()));
+    }
+
+    @ExceptionHandler(WebExchangeBindException.class)
+    public ResponseEntity<ValidationErrorResponse> handleValidationExceptions(WebExchangeBindException ex, ServerWebExchange exchange) {
+        Map<String, String> errors = new HashMap<>();
+        ex.getBindingResult().getAllErrors().forEach(error -> {
+            String fieldName = ((FieldError) error).getField();
+            String errorMessage = error.getDefaultMessage();
+            errors.put(fieldName, errorMessage);
+        });
+
+        failureLog.expected(ex, "Validation error", errors);
+        return new ResponseEntity<>(
+                new ValidationErrorResponse(
+                        HttpStatus.BAD_REQUEST.value(),
+                        "Validation failed",
+                        describe(exchange),
+                        LocalDateTime.now(),
+                        errors
+                ),
+                HttpStatus.BAD_REQUEST
+        );
+    }
+
+    @ExceptionHandler(ResponseStatusException.class)
+    public ResponseEntity<ErrorResponse> handleResponseStatusException(ResponseStatusException ex, ServerWebExchange exchange) {
+        failureLog.expected(ex, "Request failed with status " + ex.getRawStatusCode(), ex.getReason());
+        return error(ex.getStatus(), ex.getReason(), exchange);
+    }
+
+    @ExceptionHandler(Exception.class)
+    public ResponseEntity<ErrorResponse> handleGlobalException(Exception ex, ServerWebExchange exchange) {
+        failureLog.unexpected(ex, "Internal server error");
+        return error(HttpStatus.INTERNAL_SERVER_ERROR, "An unexpected error occurred", exchange);
+    }
+
+    private ResponseEntity<ErrorResponse> error(HttpStatus status, String message, ServerWebExchange exchange) {
+        return new ResponseEntity<>(
+                new ErrorResponse(status.value(), message, describe(exchange), LocalDateTime.now()),
+                status
+        );
+    }
+
+    // Same shape as WebRequest.getDescription(false)
+    private String describe(ServerWebExchange exchange) {
+        return "uri=" + exchange.getRequest().getPath().value();
+    }
+}
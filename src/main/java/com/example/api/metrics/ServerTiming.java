@@ -0,0 +1,32 @@
+package com.example.api.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Stage durations collected for one request. A stage recorded more than once (for example
+ * fanned-out lookups) is reported as the sum of its durations.
+ */
+class ServerTiming {
+
+    private final Map<String, Long> stageNanos = new LinkedHashMap<>();
+
+    synchronized void add(String stage, long nanos) {
+        stageNanos.merge(stage, nanos, Long::sum);
+    }
+
+    synchronized String toHeader(long totalNanos) {
+        StringBuilder header = new StringBuilder();
+        stageNanos.forEach((stage, nanos) -> append(header, stage, nanos));
+        append(header, "total", totalNanos);
+        return header.toString();
+    }
+
+    private static void append(StringBuilder header, String name, long nanos) {
+        if (header.length() > 0) {
+            header.append(", ");
+        }
+        header.append(name).append(";dur=").append(String.format(Locale.ROOT, "%.1f", nanos / 1_000_000.0));
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.api.metrics;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Adds a {@code Server-Timing} header listing the stages recorded by {@link StageTimer} during the
+ * request. Meant for debugging from browser dev tools: the response body is buffered so the header
+ * can be set after the handler ran, so keep it disabled in production.
+ */
+@Component
+@Profile("!reactive")
+@ConditionalOnProperty(name = "metrics.server-timing.enabled", havingValue = "true")
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        ServerTiming serverTiming = new ServerTiming();
+        ContentCachingResponseWrapper bufferedResponse = new ContentCachingResponseWrapper(response);
+        long start = System.nanoTime();
+        StageTimer.begin(serverTiming);
+        try {
+            filterChain.doFilter(request, bufferedResponse);
+        } finally {
+            StageTimer.end();
+            bufferedResponse.setHeader("Server-Timing", serverTiming.toHeader(System.nanoTime() - start));
+            bufferedResponse.copyBodyToResponse();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.api.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Times the stages of the auth hot path into the {@code auth.stage} timer, tagged with
+ * {@code stage}, {@code operation} and {@code outcome}. Callers pass constant stage and
+ * operation names, which keeps the tag cardinality fixed.
+ *
+ * <p>When a {@link ServerTimingFilter} is active for the current request, each recorded stage
+ * is also added to the request's {@code Server-Timing} header.
+ */
+@Component
+public class StageTimer {
+
+    public static final String METRIC = "auth.stage";
+
+    private static final ThreadLocal<ServerTiming> CURRENT_REQUEST = new ThreadLocal<>();
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Map<String, Stage>> stages = new ConcurrentHashMap<>();
+
+    public StageTimer(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T> T record(String stage, String operation, Supplier<T> body) {
+        Stage timers = stageOf(stage, operation);
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = body.get();
+            success = true;
+            return result;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            (success ? timers.success : timers.error).record(elapsed, TimeUnit.NANOSECONDS);
+            ServerTiming serverTiming = CURRENT_REQUEST.get();
+            if (serverTiming != null) {
+                serverTiming.add(stage, elapsed);
+            }
+        }
+    }
+
+    public void record(String stage, String operation, Runnable body) {
+        record(stage, operation, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    static void begin(ServerTiming serverTiming) {
+        CURRENT_REQUEST.set(serverTiming);
+    }
+
+    static void end() {
+        CURRENT_REQUEST.remove();
+    }
+
+    private Stage stageOf(String stage, String operation) {
+        return stages.computeIfAbsent(stage, s -> new ConcurrentHashMap<>())
+                .computeIfAbsent(operation, op -> new Stage(stage, op));
+    }
+
+    private final class Stage {
+
+        private final Timer success;
+        private final Timer error;
+
+        Stage(String stage, String operation) {
+            this.success = timer(stage, operation, "success");
+            this.error = timer(stage, operation, "error");
+        }
+
+        private Timer timer(String stage, String operation, String outcome) {
+            return Timer.builder(METRIC)
+                    .description("Latency of one stage of an auth request")
+                    .tag("stage", stage)
+                    .tag("operation", operation)
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(1))
+                    .maximumExpectedValue(Duration.ofSeconds(10))
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Progress of the Keycloak-to-MongoDB user reconciliation. The document doubles as the lease that
+ * keeps two instances from running it at once: only the {@code owner} may update it until
+ * {@code leaseUntil} has passed.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "reconciliation_checkpoints")
+public class ReconciliationCheckpoint {
+
+    public enum State { RUNNING, COMPLETED, FAILED }
+
+    @Id
+    private String id;
+
+    private State state;
+
+    private String owner;
+
+    private LocalDateTime leaseUntil;
+
+    private LocalDateTime runStartedAt;
+
+    // Every Keycloak page before this one has been applied
+    private int nextPage;
+
+    private boolean pagesComplete;
+
+    // The sweep has handled every user up to this _id
+    private String sweptThroughId;
+
+    private long inserted;
+
+    private long updated;
+
+    private long tombstoned;
+
+    private long conflicts;
+
+    private LocalDateTime completedAt;
+
+    private String error;
+}
@@ -42,9 +42,14 @@ public class User {
     @Size(max = 50)
     private String lastName;
 
+    // Looked up on every login and refresh; sparse so documents created before it was set still load
+    @Indexed(unique = true, sparse = true)
     private String keycloakId;
 
     private LocalDateTime createdAt;
 
     private LocalDateTime updatedAt;
+
+    // Last time the reconciliation job found this user unchanged in Keycloak
+    private LocalDateTime reconciledAt;
 }
@@ -0,0 +1,9 @@
+package com.example.api.model;
+
+import lombok.Value;
+
+@Value
+public class UserHandle {
+    String username;
+    String email;
+}
@@ -0,0 +1,9 @@
+package com.example.api.model;
+
+import lombok.Value;
+
+@Value
+public class UserIdentity {
+    String id;
+    String username;
+}
@@ -0,0 +1,16 @@
+package com.example.api.model;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+@Value
+public class UserProfileView {
+    String id;
+    String username;
+    String email;
+    String firstName;
+    String lastName;
+    LocalDateTime createdAt;
+    LocalDateTime updatedAt;
+}
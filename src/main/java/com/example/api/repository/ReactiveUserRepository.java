@@ -0,0 +1,17 @@
+package com.example.api.repository;
+
+import com.example.api.model.User;
+import com.example.api.model.UserIdentity;
+import com.example.api.model.UserProfileView;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface ReactiveUserRepository extends ReactiveMongoRepository<User, String> {
+    Mono<UserIdentity> findIdentityByKeycloakId(String keycloakId);
+    Mono<UserProfileView> findProfileById(String id);
+    Mono<UserProfileView> findProfileByUsername(String username);
+    Mono<Boolean> existsByUsername(String username);
+    Mono<Boolean> existsByEmail(String email);
+}
@@ -1,16 +1,27 @@
 package com.example.api.repository;
 
 import com.example.api.model.User;
+import com.example.api.model.UserHandle;
+import com.example.api.model.UserIdentity;
+import com.example.api.model.UserProfileView;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface UserRepository extends MongoRepository<User, String> {
     Optional<User> findByUsername(String username);
     Optional<User> findByEmail(String email);
     Optional<User> findByKeycloakId(String keycloakId);
+    List<User> findByKeycloakIdIn(Collection<String> keycloakIds);
+    Optional<UserIdentity> findIdentityByKeycloakId(String keycloakId);
+    Optional<UserProfileView> findProfileById(String id);
+    Optional<UserProfileView> findProfileByUsername(String username);
+    Stream<UserHandle> streamHandlesBy();
     Boolean existsByUsername(String username);
     Boolean existsByEmail(String email);
 }
@@ -0,0 +1,173 @@
+package com.example.api.security;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jose.util.DefaultResourceRetriever;
+import com.nimbusds.jose.util.ResourceRetriever;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Owns the realm's JWK set: loads it eagerly at startup, refreshes it in the background and
+ * refetches at most once per {@code jwt.jwks.min-refetch-interval-ms} when a token names a key
+ * that is not in the current set. Reports DOWN on the health (readiness) endpoint until the
+ * first successful load.
+ */
+@Component("jwks")
+@Slf4j
+public class JwksManager implements JWKSource<SecurityContext>, HealthIndicator {
+
+    @Value("${keycloak.auth-server-url}")
+    private String keycloakServerUrl;
+
+    @Value("${keycloak.realm}")
+    private String realm;
+
+    @Value("${jwt.jwks.connect-timeout-ms:2000}")
+    private int connectTimeoutMs;
+
+    @Value("${jwt.jwks.read-timeout-ms:2000}")
+    private int readTimeoutMs;
+
+    @Value("${jwt.jwks.min-refetch-interval-ms:30000}")
+    private long minRefetchIntervalMs;
+
+    private final MeterRegistry meterRegistry;
+    private final List<Runnable> rotationListeners = new CopyOnWriteArrayList<>();
+
+    private URL jwkSetUrl;
+    private ResourceRetriever resourceRetriever;
+    private Counter unknownKeyRefetches;
+
+    private volatile JWKSet jwkSet;
+    private volatile long loadedAtMillis;
+    private volatile long lastFetchNanos;
+
+    public JwksManager(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void warmUp() throws Exception {
+        jwkSetUrl = new URL(keycloakServerUrl + "/realms/" + realm + "/protocol/openid-connect/certs");
+        resourceRetriever = new DefaultResourceRetriever(connectTimeoutMs, readTimeoutMs);
+        unknownKeyRefetches = Counter.builder("jwks.unknown.kid.refetches")
+                .description("JWK set refetches triggered by tokens signed with an unknown key")
+                .register(meterRegistry);
+        Gauge.builder("jwks.key.age", this, manager -> manager.loadedAtMillis == 0
+                        ? Double.NaN
+                        : (System.currentTimeMillis() - manager.loadedAtMillis) / 1000.0)
+                .description("Seconds since the JWK set was last loaded")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+
+        refresh();
+    }
+
+    public void addRotationListener(Runnable listener) {
+        rotationListeners.add(listener);
+    }
+
+    public boolean isLoaded() {
+        return jwkSet != null;
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.jwks.refresh-interval-ms:300000}",
+            initialDelayString = "${jwt.jwks.refresh-interval-ms:300000}")
+    public void scheduledRefresh() {
+        refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.jwks.retry-interval-ms:5000}")
+    public void retryUntilLoaded() {
+        if (!isLoaded()) {
+            refresh();
+        }
+    }
+
+    @Override
+    public List<JWK> get(JWKSelector jwkSelector, SecurityContext context) throws KeySourceException {
+        JWKSet current = jwkSet;
+        List<JWK> keys = current == null ? Collections.emptyList() : jwkSelector.select(current);
+        if (!keys.isEmpty()) {
+            return keys;
+        }
+
+        if (refetchForUnknownKey()) {
+            current = jwkSet;
+            if (current != null) {
+                return jwkSelector.select(current);
+            }
+        }
+        if (current == null) {
+            throw new KeySourceException("JWK set is not available");
+        }
+        return keys;
+    }
+
+    @Override
+    public Health health() {
+        JWKSet current = jwkSet;
+        if (current == null) {
+            return Health.down().withDetail("jwkSetUrl", String.valueOf(jwkSetUrl)).build();
+        }
+        return Health.up()
+                .withDetail("keys", current.getKeys().size())
+                .withDetail("ageSeconds", (System.currentTimeMillis() - loadedAtMillis) / 1000)
+                .build();
+    }
+
+    private synchronized boolean refetchForUnknownKey() {
+        if (System.nanoTime() - lastFetchNanos < TimeUnit.MILLISECONDS.toNanos(minRefetchIntervalMs)) {
+            return false;
+        }
+        unknownKeyRefetches.increment();
+        return refresh();
+    }
+
+    private synchronized boolean refresh() {
+        lastFetchNanos = System.nanoTime();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            JWKSet fetched = JWKSet.parse(resourceRetriever.retrieveResource(jwkSetUrl).getContent());
+            sample.stop(meterRegistry.timer("jwks.refresh", "outcome", "success"));
+            JWKSet previous = jwkSet;
+            jwkSet = fetched;
+            loadedAtMillis = System.currentTimeMillis();
+            if (previous != null && !keyIds(previous).equals(keyIds(fetched))) {
+                log.info("JWK set rotated, key ids now {}", keyIds(fetched));
+                rotationListeners.forEach(Runnable::run);
+            }
+            return true;
+        } catch (Exception e) {
+            sample.stop(meterRegistry.timer("jwks.refresh", "outcome", "failure"));
+            log.warn("Could not load JWK set from {}: {}", jwkSetUrl, e.getMessage());
+            return false;
+        }
+    }
+
+    private static Set<String> keyIds(JWKSet set) {
+        return set.getKeys().stream().map(JWK::getKeyID).collect(Collectors.toSet());
+    }
+}
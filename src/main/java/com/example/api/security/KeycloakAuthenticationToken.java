@@ -0,0 +1,28 @@
+package com.example.api.security;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+import java.util.Collection;
+
+/**
+ * A {@link JwtAuthenticationToken} that also carries the principal's required-role bitmask.
+ */
+public class KeycloakAuthenticationToken extends JwtAuthenticationToken {
+
+    private final long roleMask;
+
+    public KeycloakAuthenticationToken(Jwt jwt, Collection<? extends GrantedAuthority> authorities, String name, long roleMask) {
+        super(jwt, authorities, name);
+        this.roleMask = roleMask;
+    }
+
+    public long getRoleMask() {
+        return roleMask;
+    }
+
+    public boolean hasAllRoles(long requiredMask) {
+        return (roleMask & requiredMask) == requiredMask;
+    }
+}
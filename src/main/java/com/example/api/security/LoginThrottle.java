@@ -0,0 +1,93 @@
+package com.example.api.security;
+
+import com.example.api.exception.TooManyRequestsException;
+import com.example.api.util.TokenBucketTable;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Locale;
+
+/**
+ * Rate-limits password logins and registrations per username and per client IP before they reach
+ * Keycloak, where every password grant costs a full password hash. Throttled calls fail with
+ * {@link TooManyRequestsException}, whose retry-after is the wait until the limiting bucket has a
+ * token again.
+ */
+@Component
+@RequiredArgsConstructor
+public class LoginThrottle {
+
+    @Value("${login-throttle.enabled:true}")
+    private boolean enabled;
+
+    @Value("${login-throttle.max-keys:65536}")
+    private int maxKeys;
+
+    @Value("${login-throttle.username.burst:10}")
+    private int usernameBurst;
+
+    @Value("${login-throttle.username.refill-interval-ms:6000}")
+    private long usernameRefillIntervalMs;
+
+    @Value("${login-throttle.ip.burst:100}")
+    private int ipBurst;
+
+    @Value("${login-throttle.ip.refill-interval-ms:100}")
+    private long ipRefillIntervalMs;
+
+    private final MeterRegistry meterRegistry;
+
+    private TokenBucketTable usernames;
+    private TokenBucketTable clientIps;
+    private Counter usernameRejections;
+    private Counter ipRejections;
+
+    @PostConstruct
+    void init() {
+        usernames = new TokenBucketTable(maxKeys, usernameBurst, usernameRefillIntervalMs);
+        clientIps = new TokenBucketTable(maxKeys, ipBurst, ipRefillIntervalMs);
+        usernameRejections = meterRegistry.counter("auth.throttled", "key", "username");
+        ipRejections = meterRegistry.counter("auth.throttled", "key", "ip");
+        FunctionCounter.builder("auth.throttle.evictions", usernames, TokenBucketTable::evictions)
+                .description("Active rate-limit buckets dropped because the table was full")
+                .tag("key", "username")
+                .register(meterRegistry);
+        FunctionCounter.builder("auth.throttle.evictions", clientIps, TokenBucketTable::evictions)
+                .description("Active rate-limit buckets dropped because the table was full")
+                .tag("key", "ip")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Takes one attempt from the username's and then the client IP's budget.
+     *
+     * @throws TooManyRequestsException if either budget is exhausted
+     */
+    public void acquire(String username, String clientIp) {
+        if (!enabled) {
+            return;
+        }
+        if (username != null) {
+            // Keycloak usernames are case-insensitive
+            long waitMs = usernames.tryAcquire(username.toLowerCase(Locale.ROOT));
+            if (waitMs > 0) {
+                usernameRejections.increment();
+                throw new TooManyRequestsException("Too many attempts for this user, try again later", toSeconds(waitMs));
+            }
+        }
+        long waitMs = clientIps.tryAcquire(clientIp == null ? "unknown" : clientIp);
+        if (waitMs > 0) {
+            ipRejections.increment();
+            throw new TooManyRequestsException("Too many attempts from this address, try again later", toSeconds(waitMs));
+        }
+    }
+
+    private static long toSeconds(long millis) {
+        return Math.max(1, (millis + 999) / 1000);
+    }
+}
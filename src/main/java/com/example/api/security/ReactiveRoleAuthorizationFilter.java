@@ -0,0 +1,58 @@
+package com.example.api.security;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.result.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * WebFlux counterpart of {@link RoleAuthorizationInterceptor}. Runs inside the security filter chain,
+ * so a denial is translated to 401/403 by Spring Security.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveRoleAuthorizationFilter implements WebFilter {
+
+    private final RoleRequirements roleRequirements;
+    private final RequestMappingHandlerMapping handlerMapping;
+
+    public ReactiveRoleAuthorizationFilter(RoleRequirements roleRequirements,
+                                           RequestMappingHandlerMapping requestMappingHandlerMapping) {
+        this.roleRequirements = roleRequirements;
+        this.handlerMapping = requestMappingHandlerMapping;
+    }
+
+    @EventListener
+    public void compileRequirements(ContextRefreshedEvent event) {
+        handlerMapping.getHandlerMethods().values()
+                .forEach(method -> roleRequirements.requirementOf(method.getMethod(), method.getBeanType()));
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        return handlerMapping.getHandler(exchange)
+                .filter(HandlerMethod.class::isInstance)
+                .map(handler -> roleRequirements.requirementOf(
+                        ((HandlerMethod) handler).getMethod(), ((HandlerMethod) handler).getBeanType()))
+                .defaultIfEmpty(0L)
+                .flatMap(required -> required == 0L ? chain.filter(exchange) : authorize(required, exchange, chain));
+    }
+
+    private Mono<Void> authorize(long required, ServerWebExchange exchange, WebFilterChain chain) {
+        return ReactiveSecurityContextHolder.getContext()
+                .map(SecurityContext::getAuthentication)
+                .filter(authentication -> authentication instanceof KeycloakAuthenticationToken
+                        && ((KeycloakAuthenticationToken) authentication).hasAllRoles(required))
+                .switchIfEmpty(Mono.error(() -> new AccessDeniedException("Access is denied")))
+                .then(Mono.defer(() -> chain.filter(exchange)));
+    }
+}
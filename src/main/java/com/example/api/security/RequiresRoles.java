@@ -0,0 +1,19 @@
+package com.example.api.security;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Restricts a controller method (or every method of a controller) to principals holding all of
+ * the given client roles. Checked by {@link RoleAuthorizationInterceptor} with a single bitmask
+ * comparison. Role names are given without the {@code ROLE_} prefix, as with {@code hasRole}.
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RequiresRoles {
+    String[] value();
+}
@@ -0,0 +1,58 @@
+package com.example.api.security;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Enforces {@link RequiresRoles}. Each handler method's requirement is compiled once into a bitmask,
+ * so a request is authorized with one AND against the mask carried by {@link KeycloakAuthenticationToken}.
+ */
+@Component
+@Profile("!reactive")
+@RequiredArgsConstructor
+public class RoleAuthorizationInterceptor implements HandlerInterceptor {
+
+    private final RoleRequirements roleRequirements;
+
+    @EventListener
+    public void compileRequirements(ContextRefreshedEvent event) {
+        event.getApplicationContext()
+                .getBeansOfType(RequestMappingHandlerMapping.class)
+                .values()
+                .forEach(mapping -> mapping.getHandlerMethods().values().forEach(this::requirementOf));
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!(handler instanceof HandlerMethod)) {
+            return true;
+        }
+        long required = requirementOf((HandlerMethod) handler);
+        if (required == 0L) {
+            return true;
+        }
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication instanceof KeycloakAuthenticationToken
+                && ((KeycloakAuthenticationToken) authentication).hasAllRoles(required)) {
+            return true;
+        }
+        throw new AccessDeniedException("Access is denied");
+    }
+
+    private long requirementOf(HandlerMethod handlerMethod) {
+        return roleRequirements.requirementOf(handlerMethod.getMethod(), handlerMethod.getBeanType());
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.api.security;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns a bit position to every role that some endpoint requires. Roles no endpoint asks for get
+ * no bit, so a principal's mask only ever carries the roles that can affect an authorization decision.
+ */
+@Component
+public class RoleBitRegistry {
+
+    private static final int MAX_ROLES = Long.SIZE;
+
+    private final Map<String, Integer> bits = new ConcurrentHashMap<>();
+    private volatile long version;
+
+    public synchronized long register(String role) {
+        Integer bit = bits.get(role);
+        if (bit == null) {
+            if (bits.size() == MAX_ROLES) {
+                throw new IllegalStateException("At most " + MAX_ROLES + " distinct required roles are supported");
+            }
+            bit = bits.size();
+            bits.put(role, bit);
+            version++;
+        }
+        return 1L << bit;
+    }
+
+    public long maskOf(Collection<String> roles) {
+        long mask = 0L;
+        if (roles != null) {
+            for (String role : roles) {
+                Integer bit = bits.get(role);
+                if (bit != null) {
+                    mask |= 1L << bit;
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Incremented whenever a role is registered; masks computed under an older version may be missing bits.
+     */
+    public long version() {
+        return version;
+    }
+}
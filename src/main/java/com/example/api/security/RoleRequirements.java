@@ -0,0 +1,45 @@
+package com.example.api.security;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiles {@link RequiresRoles} declarations into bitmasks, once per handler method.
+ */
+@Component
+@RequiredArgsConstructor
+public class RoleRequirements {
+
+    private final RoleBitRegistry roleBitRegistry;
+    private final Map<Method, Long> requirements = new ConcurrentHashMap<>();
+
+    /**
+     * @return the mask of roles required to invoke {@code method}, or {@code 0} if it is unrestricted
+     */
+    public long requirementOf(Method method, Class<?> beanType) {
+        Long mask = requirements.get(method);
+        if (mask == null) {
+            mask = requirements.computeIfAbsent(method, m -> compile(m, beanType));
+        }
+        return mask;
+    }
+
+    private long compile(Method method, Class<?> beanType) {
+        RequiresRoles annotation = AnnotatedElementUtils.findMergedAnnotation(method, RequiresRoles.class);
+        if (annotation == null) {
+            annotation = AnnotatedElementUtils.findMergedAnnotation(beanType, RequiresRoles.class);
+        }
+        long mask = 0L;
+        if (annotation != null) {
+            for (String role : annotation.value()) {
+                mask |= roleBitRegistry.register(role);
+            }
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,342 @@
+package com.example.api.service;
+
+import com.example.api.client.KeycloakCallLimiter;
+import com.example.api.client.KeycloakOperation;
+import com.example.api.dto.BatchRegistrationResponse;
+import com.example.api.dto.BatchRegistrationResult;
+import com.example.api.dto.BatchRegistrationResult.Status;
+import com.example.api.dto.UserRegistrationRequest;
+import com.example.api.model.User;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.mongodb.bulk.BulkWriteError;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.keycloak.admin.client.Keycloak;
+import org.keycloak.representations.idm.CredentialRepresentation;
+import org.keycloak.representations.idm.PartialImportRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import javax.ws.rs.core.Response;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Registers many users at once: Keycloak users are created in chunks through the realm partial-import
+ * API and the matching {@link User} documents are written with one unordered bulk insert per chunk.
+ * <p>
+ * A Keycloak user is never left without its document. If its insert hits a duplicate key, the
+ * Keycloak user is deleted again. If the insert fails for any other reason, the user is handed to
+ * the {@link UserOutbox}, which keeps retrying, and is reported as {@link Status#PENDING}.
+ * <p>
+ * Imports use their own admin client with a longer read timeout ({@code keycloak-client.batch.timeout-ms}).
+ * If an import fails anyway, Keycloak may still have committed it, so the chunk's users are looked up
+ * and those this import created are stored like any other.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BatchRegistrationService {
+
+    private static final int DUPLICATE_KEY = 11000;
+    private static final String ORIGIN = "api-batch-registration";
+    // Allowed difference between our clock and Keycloak's when matching users to a failed import
+    private static final long CLOCK_SKEW_MS = 60_000;
+
+    @Value("${keycloak.realm}")
+    private String realm;
+
+    @Value("${keycloak-client.batch.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${keycloak-client.batch.max-size:10000}")
+    private int maxBatchSize;
+
+    private final Keycloak keycloakAdminClient;
+    private final Keycloak keycloakBatchAdminClient;
+    private final KeycloakCallLimiter callLimiter;
+    private final UserService userService;
+    private final UserOutbox userOutbox;
+    private final Validator validator;
+
+    public BatchRegistrationResponse registerUsers(List<UserRegistrationRequest> requests) {
+        if (requests.size() > maxBatchSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "A batch may contain at most " + maxBatchSize + " users");
+        }
+
+        BatchRegistrationResult[] results = new BatchRegistrationResult[requests.size()];
+        List<Integer> accepted = validate(requests, results);
+
+        for (int from = 0; from < accepted.size(); from += chunkSize) {
+            List<Integer> chunk = accepted.subList(from, Math.min(from + chunkSize, accepted.size()));
+            long started = System.currentTimeMillis();
+            try {
+                importChunk(requests, chunk, results);
+            } catch (Exception e) {
+                log.error("Batch registration chunk failed: {}", e.getMessage(), e);
+                recoverChunk(requests, chunk, results, started);
+            }
+        }
+
+        List<BatchRegistrationResult> resultList = List.of(results);
+        Map<Status, Long> counts = resultList.stream()
+                .collect(Collectors.groupingBy(BatchRegistrationResult::getStatus, Collectors.counting()));
+        return BatchRegistrationResponse.builder()
+                .created(counts.getOrDefault(Status.CREATED, 0L).intValue())
+                .pending(counts.getOrDefault(Status.PENDING, 0L).intValue())
+                .skipped(counts.getOrDefault(Status.SKIPPED, 0L).intValue())
+                .failed(counts.getOrDefault(Status.FAILED, 0L).intValue())
+                .results(resultList)
+                .build();
+    }
+
+    private List<Integer> validate(List<UserRegistrationRequest> requests, BatchRegistrationResult[] results) {
+        List<Integer> accepted = new ArrayList<>(requests.size());
+        Set<String> usernames = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        for (int i = 0; i < requests.size(); i++) {
+            UserRegistrationRequest request = requests.get(i);
+            if (request == null) {
+                results[i] = result(i, null, Status.FAILED, null, "Entry is empty");
+                continue;
+            }
+            Set<ConstraintViolation<UserRegistrationRequest>> violations = validator.validate(request);
+            if (!violations.isEmpty()) {
+                String message = violations.stream()
+                        .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining("; "));
+                results[i] = result(i, request, Status.FAILED, null, message);
+            } else if (!usernames.add(request.getUsername().toLowerCase(Locale.ROOT))) {
+                results[i] = result(i, request, Status.FAILED, null, "Duplicate username in batch");
+            } else if (!emails.add(request.getEmail().toLowerCase(Locale.ROOT))) {
+                results[i] = result(i, request, Status.FAILED, null, "Duplicate email in batch");
+            } else {
+                accepted.add(i);
+            }
+        }
+        return accepted;
+    }
+
+    private void importChunk(List<UserRegistrationRequest> requests, List<Integer> chunk, BatchRegistrationResult[] results) {
+        PartialImportRepresentation partialImport = new PartialImportRepresentation();
+        partialImport.setIfResourceExists(PartialImportRepresentation.Policy.SKIP.name());
+        partialImport.setUsers(chunk.stream()
+                .map(index -> toRepresentation(requests.get(index)))
+                .collect(Collectors.toList()));
+
+        Map<String, ImportedResource> imported = new HashMap<>();
+        callLimiter.run(KeycloakOperation.ADMIN, () -> {
+            try (Response response = keycloakBatchAdminClient.realm(realm).partialImport(partialImport)) {
+                if (response.getStatus() != 200) {
+                    throw new IllegalStateException("Keycloak partial import returned HTTP " + response.getStatus());
+                }
+                for (ImportedResource resource : response.readEntity(PartialImportResponse.class).getResults()) {
+                    imported.put(resource.getResourceName().toLowerCase(Locale.ROOT), resource);
+                }
+            }
+        });
+
+        List<Integer> created = new ArrayList<>();
+        List<User> users = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (int index : chunk) {
+            UserRegistrationRequest request = requests.get(index);
+            ImportedResource resource = imported.get(request.getUsername().toLowerCase(Locale.ROOT));
+            if (resource == null) {
+                results[index] = result(index, request, Status.FAILED, null, "Not reported by Keycloak");
+            } else if (!"ADDED".equals(resource.getAction())) {
+                results[index] = result(index, request, Status.SKIPPED, null, "User already exists");
+            } else {
+                created.add(index);
+                users.add(toUser(request, resource.getId(), now));
+            }
+        }
+        store(requests, created, users, results);
+    }
+
+    /**
+     * Settles the users of a chunk whose import failed. The import may have been committed by
+     * Keycloak anyway, for example when only the response timed out: users it created are stored,
+     * the rest are reported as failed.
+     */
+    private void recoverChunk(List<UserRegistrationRequest> requests, List<Integer> chunk,
+                              BatchRegistrationResult[] results, long started) {
+        List<Integer> created = new ArrayList<>();
+        List<User> users = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (int index : chunk) {
+            if (results[index] != null) {
+                continue;
+            }
+            UserRegistrationRequest request = requests.get(index);
+            UserRepresentation existing;
+            try {
+                existing = callLimiter.call(KeycloakOperation.ADMIN, () -> keycloakAdminClient.realm(realm).users()
+                        .search(request.getUsername(), true).stream()
+                        .findFirst()
+                        .orElse(null));
+            } catch (RuntimeException e) {
+                log.warn("Batch registration: could not look up user {} after a failed import: {}",
+                        request.getUsername(), e.getMessage());
+                results[index] = result(index, request, Status.FAILED, null, "Registration failed; the user may exist in Keycloak");
+                continue;
+            }
+            if (existing == null) {
+                results[index] = result(index, request, Status.FAILED, null, "Registration failed");
+            } else if (createdByImport(existing, request, started)) {
+                created.add(index);
+                users.add(toUser(request, existing.getId(), now));
+            } else {
+                results[index] = result(index, request, Status.SKIPPED, null, "User already exists");
+            }
+        }
+        store(requests, created, users, results);
+    }
+
+    private static boolean createdByImport(UserRepresentation user, UserRegistrationRequest request, long started) {
+        Map<String, List<String>> attributes = user.getAttributes();
+        return user.getCreatedTimestamp() != null
+                && user.getCreatedTimestamp() >= started - CLOCK_SKEW_MS
+                && request.getEmail().equalsIgnoreCase(user.getEmail())
+                && attributes != null
+                && attributes.getOrDefault("origin", List.of()).contains(ORIGIN);
+    }
+
+    private void store(List<UserRegistrationRequest> requests, List<Integer> created, List<User> users,
+                       BatchRegistrationResult[] results) {
+        // From here on the Keycloak users exist, so every one of them must end up stored or deleted
+        Map<Integer, BulkWriteError> failures;
+        try {
+            failures = userService.createUsers(users);
+        } catch (RuntimeException e) {
+            log.warn("Batch registration: storing {} users failed, journaling them instead: {}", users.size(), e.getMessage());
+            failures = null;
+        }
+        for (int i = 0; i < created.size(); i++) {
+            int index = created.get(i);
+            User user = users.get(i);
+            BulkWriteError failure = failures == null ? null : failures.get(i);
+            if (failures != null && failure == null) {
+                results[index] = result(index, requests.get(index), Status.CREATED, user.getId(), null);
+            } else if (failure != null && failure.getCode() == DUPLICATE_KEY) {
+                if (!removeFromKeycloak(user)) {
+                    // The outbox hits the same conflict and keeps trying to delete the Keycloak user
+                    journal(index, requests.get(index), user);
+                }
+                results[index] = result(index, requests.get(index), Status.FAILED, null, "Username or email already exists");
+            } else {
+                results[index] = journal(index, requests.get(index), user);
+            }
+        }
+    }
+
+    /**
+     * Hands a user whose insert failed to the outbox, which retries it and deletes the Keycloak user
+     * if its username or email turns out to be taken.
+     */
+    private BatchRegistrationResult journal(int index, UserRegistrationRequest request, User user) {
+        try {
+            userOutbox.append(user);
+            return result(index, request, Status.PENDING, user.getId(), null);
+        } catch (RuntimeException e) {
+            log.error("Batch registration: could not journal user {}: {}", user.getUsername(), e.getMessage(), e);
+            removeFromKeycloak(user);
+            return result(index, request, Status.FAILED, null, "Registration failed");
+        }
+    }
+
+    /**
+     * @return whether the Keycloak user is gone
+     */
+    private boolean removeFromKeycloak(User user) {
+        try {
+            callLimiter.run(KeycloakOperation.ADMIN, () -> {
+                try (Response response = keycloakAdminClient.realm(realm).users().delete(user.getKeycloakId())) {
+                    // 404: already gone
+                    if (response.getStatus() != 204 && response.getStatus() != 404) {
+                        throw new IllegalStateException("Keycloak answered " + response.getStatus());
+                    }
+                }
+            });
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Batch registration: could not delete Keycloak user {}: {}", user.getKeycloakId(), e.getMessage());
+            return false;
+        }
+    }
+
+    private static User toUser(UserRegistrationRequest request, String keycloakId, LocalDateTime now) {
+        return User.builder()
+                .id(new ObjectId().toHexString())
+                .username(request.getUsername())
+                .email(request.getEmail())
+                .firstName(request.getFirstName())
+                .lastName(request.getLastName())
+                .keycloakId(keycloakId)
+                .createdAt(now)
+                .updatedAt(now)
+                .build();
+    }
+
+    private UserRepresentation toRepresentation(UserRegistrationRequest request) {
+        CredentialRepresentation password = new CredentialRepresentation();
+        password.setTemporary(false);
+        password.setType(CredentialRepresentation.PASSWORD);
+        password.setValue(request.getPassword());
+
+        UserRepresentation user = new UserRepresentation();
+        user.setEnabled(true);
+        user.setUsername(request.getUsername());
+        user.setEmail(request.getEmail());
+        user.setFirstName(request.getFirstName());
+        user.setLastName(request.getLastName());
+        user.setEmailVerified(true);
+        user.setAttributes(Map.of("origin", Collections.singletonList(ORIGIN)));
+        user.setCredentials(List.of(password));
+        user.setRealmRoles(List.of("user"));
+        return user;
+    }
+
+    private static BatchRegistrationResult result(int index, UserRegistrationRequest request, Status status,
+                                                  String userId, String message) {
+        return BatchRegistrationResult.builder()
+                .index(index)
+                .username(request == null ? null : request.getUsername())
+                .status(status)
+                .userId(userId)
+                .message(message)
+                .build();
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class PartialImportResponse {
+        private List<ImportedResource> results = List.of();
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class ImportedResource {
+        private String action;
+        private String resourceType;
+        private String resourceName;
+        private String id;
+    }
+}
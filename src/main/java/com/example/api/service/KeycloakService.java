@@ -1,14 +1,21 @@
 package com.example.api.service;
 
+import com.example.api.client.KeycloakCallLimiter;
+import com.example.api.client.KeycloakOperation;
+import com.example.api.client.KeycloakTokenClient;
 import com.example.api.dto.AuthResponse;
 import com.example.api.dto.LoginRequest;
 import com.example.api.dto.UserRegistrationRequest;
 import com.example.api.exception.AuthenticationException;
+import com.example.api.exception.KeycloakUnavailableException;
 import com.example.api.exception.UserAlreadyExistsException;
+import com.example.api.metrics.StageTimer;
+import com.example.api.model.UserIdentity;
+import com.example.api.util.JwtClaimReader;
+import com.example.api.util.SingleFlight;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.keycloak.admin.client.Keycloak;
-import org.keycloak.admin.client.KeycloakBuilder;
 import org.keycloak.admin.client.resource.RealmResource;
 import org.keycloak.admin.client.resource.UsersResource;
 import org.keycloak.representations.AccessTokenResponse;
@@ -18,47 +25,72 @@ import org.keycloak.representations.idm.UserRepresentation;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.server.ResponseStatusException;
 
 import javax.ws.rs.core.Response;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class KeycloakService {
 
-    @Value("${keycloak.auth-server-url}")
-    private String authServerUrl;
-
     @Value("${keycloak.realm}")
     private String realm;
 
-    @Value("${keycloak.resource}")
-    private String clientId;
-
-    @Value("${keycloak.credentials.secret}")
-    private String clientSecret;
-
     private final UserService userService;
+    private final Keycloak keycloakAdminClient;
+    private final KeycloakTokenClient keycloakTokenClient;
+    private final RealmRoleCache realmRoleCache;
+    private final UserAvailabilityIndex availabilityIndex;
+    private final Executor keycloakExecutor;
+    private final KeycloakCallLimiter callLimiter;
+    private final StageTimer stageTimer;
+
+    private final SingleFlight<String, AccessTokenResponse> refreshFlights = new SingleFlight<>();
 
     public AuthResponse registerUser(UserRegistrationRequest request) {
+        // Reject users we already know about without calling Keycloak
+        stageTimer.record("availability.check", "register", () -> {
+            if (availabilityIndex.isUsernameTaken(request.getUsername())) {
+                throw new UserAlreadyExistsException("Username already exists");
+            }
+            if (availabilityIndex.isEmailTaken(request.getEmail())) {
+                throw new UserAlreadyExistsException("Email already exists");
+            }
+        });
+
         try {
             // Create user in Keycloak
-            String userId = createKeycloakUser(request);
+            String userId = stageTimer.record("keycloak.create_user", "register", () -> createKeycloakUser(request));
             
-            // Create user in our database
+            // Journal the user; the outbox writes it to our database in the background
             userService.createUser(request, userId);
             
             // Login the user to get tokens
             return authenticateUser(new LoginRequest(request.getUsername(), request.getPassword()));
         } catch (Exception e) {
-            log.error("Error registering user: {}", e.getMessage(), e);
+            if (e instanceof CompletionException && e.getCause() instanceof Exception) {
+                e = (Exception) e.getCause();
+            }
             if (e instanceof UserAlreadyExistsException) {
                 throw (UserAlreadyExistsException) e;
             }
+            if (e instanceof KeycloakUnavailableException) {
+                throw (KeycloakUnavailableException) e;
+            }
+            if (e instanceof ResponseStatusException) {
+                throw (ResponseStatusException) e;
+            }
+            log.error("Error registering user: {}", e.getMessage(), e);
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error registering user");
         }
     }
@@ -66,10 +98,12 @@ public class KeycloakService {
     public AuthResponse authenticateUser(LoginRequest loginRequest) {
         try {
             // Get tokens from Keycloak
-            AccessTokenResponse tokenResponse = getKeycloakToken(loginRequest.getUsername(), loginRequest.getPassword());
+            AccessTokenResponse tokenResponse = stageTimer.record("keycloak.token_grant", "login",
+                    () -> keycloakTokenClient.passwordGrant(loginRequest.getUsername(), loginRequest.getPassword()));
             
             // Get user from our database
-            String keycloakUserId = getUserIdFromToken(tokenResponse.getToken());
+            String keycloakUserId = stageTimer.record("jwt.claims", "login",
+                    () -> JwtClaimReader.readIdentity(tokenResponse.getToken()).getSubject());
             String userId = userService.getUserIdByKeycloakId(keycloakUserId);
             
             return AuthResponse.builder()
@@ -80,6 +114,16 @@ public class KeycloakService {
                     .userId(userId)
                     .username(loginRequest.getUsername())
                     .build();
+        } catch (KeycloakUnavailableException e) {
+            // Keycloak saturated or unavailable; not the caller's credentials
+            throw e;
+        } catch (ResourceAccessException | HttpServerErrorException e) {
+            // The handler logs a sample of these; one line per request would flood the log during an outage
+            log.debug("Keycloak unavailable during authentication: {}", e.getMessage());
+            throw new KeycloakUnavailableException("Keycloak is unavailable, try again later", 1);
+        } catch (HttpClientErrorException e) {
+            // Credentials rejected by Keycloak: expected, so no stack trace here
+            throw new AuthenticationException("Invalid username or password");
         } catch (Exception e) {
             log.error("Authentication error: {}", e.getMessage(), e);
             throw new AuthenticationException("Invalid username or password");
@@ -88,13 +132,16 @@ public class KeycloakService {
 
     public AuthResponse refreshToken(String refreshToken) {
         try {
-            // Get new tokens using refresh token
-            AccessTokenResponse tokenResponse = getKeycloakTokenByRefreshToken(refreshToken);
+            // Get new tokens using refresh token, sharing one grant between concurrent callers
+            AccessTokenResponse tokenResponse = stageTimer.record("keycloak.token_grant", "refresh",
+                    () -> refreshFlights.execute(refreshToken, () -> keycloakTokenClient.refreshGrant(refreshToken)));
             
-            // Get user from our database
-            String keycloakUserId = getUserIdFromToken(tokenResponse.getToken());
-            String userId = userService.getUserIdByKeycloakId(keycloakUserId);
-            String username = userService.getUsernameByKeycloakId(keycloakUserId);
+            // Get user from our database (a single cached identity lookup)
+            String keycloakUserId = stageTimer.record("jwt.claims", "refresh",
+                    () -> JwtClaimReader.readIdentity(tokenResponse.getToken()).getSubject());
+            UserIdentity user = userService.getIdentityByKeycloakId(keycloakUserId);
+            String userId = user.getId();
+            String username = user.getUsername();
             
             return AuthResponse.builder()
                     .accessToken(tokenResponse.getToken())
@@ -104,45 +151,43 @@ public class KeycloakService {
                     .userId(userId)
                     .username(username)
                     .build();
+        } catch (KeycloakUnavailableException e) {
+            throw e;
+        } catch (ResourceAccessException | HttpServerErrorException e) {
+            log.debug("Keycloak unavailable during token refresh: {}", e.getMessage());
+            throw new KeycloakUnavailableException("Keycloak is unavailable, try again later", 1);
+        } catch (HttpClientErrorException e) {
+            // Expired or revoked refresh token
+            throw new AuthenticationException("Invalid refresh token");
         } catch (Exception e) {
             log.error("Token refresh error: {}", e.getMessage(), e);
             throw new AuthenticationException("Invalid refresh token");
         }
     }
 
-    private AccessTokenResponse getKeycloakTokenByRefreshToken(String refreshToken) {
-        // Use a different approach for refresh tokens since KeycloakBuilder doesn't have a refreshToken method
-        // We'll use a direct OAuth2 refresh token grant type approach
-        
-        // For this example, we'll simulate a successful token refresh
-        // In a real implementation, you would make an HTTP request to Keycloak's token endpoint
-        
-        AccessTokenResponse response = new AccessTokenResponse();
-        response.setToken("simulated-new-access-token");
-        response.setRefreshToken("simulated-new-refresh-token");
-        response.setTokenType("bearer");
-        response.setExpiresIn(300);
-        
-        return response;
-    }
-
     private String createKeycloakUser(UserRegistrationRequest request) {
-        Keycloak keycloakAdmin = getKeycloakAdminClient();
-        RealmResource realmResource = keycloakAdmin.realm(realm);
+        RealmResource realmResource = keycloakAdminClient.realm(realm);
         UsersResource usersResource = realmResource.users();
 
-        // Check if user already exists
-        List<UserRepresentation> existingUsers = usersResource.search(request.getUsername());
-        if (!existingUsers.isEmpty()) {
+        // Check if user already exists; both lookups run concurrently
+        CompletableFuture<Boolean> usernameTaken = CompletableFuture.supplyAsync(
+                () -> callLimiter.call(KeycloakOperation.ADMIN, () -> !usersResource.search(request.getUsername(), true).isEmpty()), keycloakExecutor);
+        CompletableFuture<Boolean> emailTaken = CompletableFuture.supplyAsync(
+                () -> callLimiter.call(KeycloakOperation.ADMIN, () -> emailExists(usersResource, request.getEmail())), keycloakExecutor);
+
+        if (usernameTaken.join()) {
             throw new UserAlreadyExistsException("Username already exists");
         }
-
-        existingUsers = usersResource.search(request.getEmail());
-        if (!existingUsers.isEmpty()) {
+        if (emailTaken.join()) {
             throw new UserAlreadyExistsException("Email already exists");
         }
 
-        // Create user representation
+        // Create user representation, including the password so no separate reset call is needed
+        CredentialRepresentation passwordCred = new CredentialRepresentation();
+        passwordCred.setTemporary(false);
+        passwordCred.setType(CredentialRepresentation.PASSWORD);
+        passwordCred.setValue(request.getPassword());
+
         UserRepresentation user = new UserRepresentation();
         user.setEnabled(true);
         user.setUsername(request.getUsername());
@@ -150,6 +195,7 @@ public class KeycloakService {
         user.setFirstName(request.getFirstName());
         user.setLastName(request.getLastName());
         user.setEmailVerified(true);
+        user.setCredentials(List.of(passwordCred));
 
         // Set user attributes if needed
         Map<String, List<String>> attributes = Map.of(
@@ -158,86 +204,35 @@ public class KeycloakService {
         user.setAttributes(attributes);
 
         // Create user
-        Response response = usersResource.create(user);
-        if (response.getStatus() != 201) {
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to create user in Keycloak");
-        }
-
-        // Get user id from response
-        String userId = getCreatedUserId(response);
-
-        // Set password
-        setUserPassword(usersResource, userId, request.getPassword());
+        String userId = callLimiter.call(KeycloakOperation.ADMIN, () -> {
+            try (Response response = usersResource.create(user)) {
+                if (response.getStatus() != 201) {
+                    throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to create user in Keycloak");
+                }
+
+                // Get user id from response
+                return getCreatedUserId(response);
+            }
+        });
 
         // Assign roles if needed
-        assignRolesToUser(realmResource, userId, List.of("user"));
+        assignRolesToUser(usersResource, userId, List.of("user"));
 
         return userId;
     }
 
-    private void setUserPassword(UsersResource usersResource, String userId, String password) {
-        CredentialRepresentation passwordCred = new CredentialRepresentation();
-        passwordCred.setTemporary(false);
-        passwordCred.setType(CredentialRepresentation.PASSWORD);
-        passwordCred.setValue(password);
-
-        usersResource.get(userId).resetPassword(passwordCred);
+    private boolean emailExists(UsersResource usersResource, String email) {
+        // Exact match, so one brief representation is enough
+        return !usersResource.search(null, null, null, email, true, 0, 1, null, true).isEmpty();
     }
 
-    private void assignRolesToUser(RealmResource realmResource, String userId, List<String> roles) {
-        roles.forEach(roleName -> {
-            RoleRepresentation role = realmResource.roles().get(roleName).toRepresentation();
-            realmResource.users().get(userId).roles().realmLevel().add(Collections.singletonList(role));
-        });
+    private void assignRolesToUser(UsersResource usersResource, String userId, List<String> roles) {
+        List<RoleRepresentation> representations = realmRoleCache.getRoles(roles);
+        callLimiter.run(KeycloakOperation.ADMIN, () -> usersResource.get(userId).roles().realmLevel().add(representations));
     }
 
     private String getCreatedUserId(Response response) {
         String locationHeader = response.getHeaderString("Location");
         return locationHeader.substring(locationHeader.lastIndexOf("/") + 1);
     }
-
-    private AccessTokenResponse getKeycloakToken(String username, String password) {
-        Keycloak keycloak = KeycloakBuilder.builder()
-                .serverUrl(authServerUrl)
-                .realm(realm)
-                .clientId(clientId)
-                .clientSecret(clientSecret)
-                .username(username)
-                .password(password)
-                .build();
-
-        return keycloak.tokenManager().getAccessToken();
-    }
-
-    private AccessTokenResponse refreshKeycloakToken(String refreshToken) {
-        // Use a different approach for refresh tokens since KeycloakBuilder doesn't have a refreshToken method
-        // We'll use a direct OAuth2 refresh token grant type approach
-        
-        // For this example, we'll simulate a successful token refresh
-        // In a real implementation, you would make an HTTP request to Keycloak's token endpoint
-        
-        AccessTokenResponse response = new AccessTokenResponse();
-        response.setToken("simulated-new-access-token");
-        response.setRefreshToken("simulated-new-refresh-token");
-        response.setTokenType("bearer");
-        response.setExpiresIn(300);
-        
-        return response;
-    }
-
-    private Keycloak getKeycloakAdminClient() {
-        return KeycloakBuilder.builder()
-                .serverUrl(authServerUrl)
-                .realm("master")
-                .clientId("admin-cli")
-                .username("admin")
-                .password("admin")
-                .build();
-    }
-
-    private String getUserIdFromToken(String token) {
-        // In a real implementation, you would parse the JWT token to extract the user ID
-        // For simplicity, we're just returning a placeholder
-        return "keycloak-user-id";
-    }
 }
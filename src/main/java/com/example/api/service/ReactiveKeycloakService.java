@@ -0,0 +1,159 @@
+package com.example.api.service;
+
+import com.example.api.client.ReactiveKeycloakClient;
+import com.example.api.dto.AuthResponse;
+import com.example.api.dto.LoginRequest;
+import com.example.api.dto.UserRegistrationRequest;
+import com.example.api.exception.AuthenticationException;
+import com.example.api.exception.DomainException;
+import com.example.api.exception.KeycloakUnavailableException;
+import com.example.api.exception.UserAlreadyExistsException;
+import com.example.api.util.JwtClaimReader;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.representations.AccessTokenResponse;
+import org.keycloak.representations.idm.CredentialRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Non-blocking counterpart of {@link KeycloakService} used by the {@code reactive} profile.
+ */
+@Service
+@Profile("reactive")
+@RequiredArgsConstructor
+@Slf4j
+public class ReactiveKeycloakService {
+
+    private final ReactiveUserService userService;
+    private final ReactiveKeycloakClient keycloakClient;
+
+    // refresh token -> in-flight grant, shared between concurrent callers
+    private final Map<String, Mono<AccessTokenResponse>> refreshFlights = new ConcurrentHashMap<>();
+
+    public Mono<AuthResponse> registerUser(UserRegistrationRequest request) {
+        // Reject users we already know about without calling Keycloak
+        return Mono.zip(userService.isUsernameTaken(request.getUsername()), userService.isEmailTaken(request.getEmail()))
+                .flatMap(local -> {
+                    if (local.getT1()) {
+                        return Mono.error(new UserAlreadyExistsException("Username already exists"));
+                    }
+                    if (local.getT2()) {
+                        return Mono.error(new UserAlreadyExistsException("Email already exists"));
+                    }
+                    return createKeycloakUser(request);
+                })
+                .flatMap(userId -> userService.createUser(request, userId))
+                .then(Mono.defer(() -> authenticateUser(new LoginRequest(request.getUsername(), request.getPassword()))))
+                .onErrorMap(e -> !(e instanceof DomainException), e -> {
+                    log.error("Error registering user: {}", e.getMessage(), e);
+                    return new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error registering user");
+                });
+    }
+
+    public Mono<AuthResponse> authenticateUser(LoginRequest loginRequest) {
+        return keycloakClient.passwordGrant(loginRequest.getUsername(), loginRequest.getPassword())
+                .flatMap(tokenResponse -> {
+                    String keycloakUserId = JwtClaimReader.readIdentity(tokenResponse.getToken()).getSubject();
+                    return userService.getIdentityByKeycloakId(keycloakUserId)
+                            .map(user -> AuthResponse.builder()
+                                    .accessToken(tokenResponse.getToken())
+                                    .refreshToken(tokenResponse.getRefreshToken())
+                                    .tokenType(tokenResponse.getTokenType())
+                                    .expiresIn(tokenResponse.getExpiresIn())
+                                    .userId(user.getId())
+                                    .username(loginRequest.getUsername())
+                                    .build());
+                })
+                .onErrorMap(e -> !(e instanceof DomainException),
+                        e -> toDomainException(e, "Invalid username or password", "authentication"));
+    }
+
+    public Mono<AuthResponse> refreshToken(String refreshToken) {
+        return refreshFlights.computeIfAbsent(refreshToken, token -> keycloakClient.refreshGrant(token)
+                        .doFinally(signal -> refreshFlights.remove(token))
+                        .cache())
+                .flatMap(tokenResponse -> {
+                    String keycloakUserId = JwtClaimReader.readIdentity(tokenResponse.getToken()).getSubject();
+                    return userService.getIdentityByKeycloakId(keycloakUserId)
+                            .map(user -> AuthResponse.builder()
+                                    .accessToken(tokenResponse.getToken())
+                                    .refreshToken(tokenResponse.getRefreshToken())
+                                    .tokenType(tokenResponse.getTokenType())
+                                    .expiresIn(tokenResponse.getExpiresIn())
+                                    .userId(user.getId())
+                                    .username(user.getUsername())
+                                    .build());
+                })
+                .onErrorMap(e -> !(e instanceof DomainException),
+                        e -> toDomainException(e, "Invalid refresh token", "token refresh"));
+    }
+
+    private Mono<String> createKeycloakUser(UserRegistrationRequest request) {
+        // Check if user already exists; both lookups run concurrently
+        return Mono.zip(keycloakClient.usernameExists(request.getUsername()), keycloakClient.emailExists(request.getEmail()))
+                .flatMap(remote -> {
+                    if (remote.getT1()) {
+                        return Mono.error(new UserAlreadyExistsException("Username already exists"));
+                    }
+                    if (remote.getT2()) {
+                        return Mono.error(new UserAlreadyExistsException("Email already exists"));
+                    }
+                    return keycloakClient.createUser(toRepresentation(request));
+                })
+                .flatMap(userId -> keycloakClient.assignRealmRoles(userId, List.of("user")).thenReturn(userId));
+    }
+
+    private UserRepresentation toRepresentation(UserRegistrationRequest request) {
+        CredentialRepresentation passwordCred = new CredentialRepresentation();
+        passwordCred.setTemporary(false);
+        passwordCred.setType(CredentialRepresentation.PASSWORD);
+        passwordCred.setValue(request.getPassword());
+
+        UserRepresentation user = new UserRepresentation();
+        user.setEnabled(true);
+        user.setUsername(request.getUsername());
+        user.setEmail(request.getEmail());
+        user.setFirstName(request.getFirstName());
+        user.setLastName(request.getLastName());
+        user.setEmailVerified(true);
+        user.setCredentials(List.of(passwordCred));
+        user.setAttributes(Map.of("origin", Collections.singletonList("api-registration")));
+        return user;
+    }
+
+    // Same mapping as the blocking KeycloakService: 4xx means the caller's credentials were rejected,
+    // I/O errors, timeouts and 5xx mean Keycloak is unavailable
+    private static DomainException toDomainException(Throwable e, String rejectedMessage, String action) {
+        if (e instanceof WebClientResponseException) {
+            WebClientResponseException response = (WebClientResponseException) e;
+            if (response.getStatusCode().is4xxClientError()) {
+                // Rejected credentials are expected and logged, sampled, by the exception handler
+                return new AuthenticationException(rejectedMessage);
+            }
+            if (response.getStatusCode().is5xxServerError()) {
+                log.debug("Keycloak unavailable during {}: {}", action, e.getMessage());
+                return new KeycloakUnavailableException("Keycloak is unavailable, try again later", 1);
+            }
+        }
+        if (e instanceof WebClientRequestException || e instanceof TimeoutException) {
+            // The handler logs a sample of these; one line per request would flood the log during an outage
+            log.debug("Keycloak unavailable during {}: {}", action, e.getMessage());
+            return new KeycloakUnavailableException("Keycloak is unavailable, try again later", 1);
+        }
+        log.error("Error during {}: {}", action, e.getMessage(), e);
+        return new AuthenticationException(rejectedMessage);
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.api.service;
+
+import com.example.api.dto.UserProfileResponse;
+import com.example.api.dto.UserRegistrationRequest;
+import com.example.api.exception.ResourceNotFoundException;
+import com.example.api.model.User;
+import com.example.api.model.UserIdentity;
+import com.example.api.repository.ReactiveUserRepository;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+
+@Service
+@Profile("reactive")
+@RequiredArgsConstructor
+@Slf4j
+public class ReactiveUserService implements UserCacheEvictor {
+
+    private final ReactiveUserRepository userRepository;
+    private final UserAvailabilityIndex availabilityIndex;
+    private final UserOutbox userOutbox;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${user-cache.identity.maximum-size:100000}")
+    private long identityCacheMaximumSize;
+
+    @Value("${user-cache.identity.ttl-seconds:600}")
+    private long identityCacheTtlSeconds;
+
+    @Value("${user-cache.profile.maximum-size:50000}")
+    private long profileCacheMaximumSize;
+
+    @Value("${user-cache.profile.ttl-seconds:300}")
+    private long profileCacheTtlSeconds;
+
+    // keycloakId -> (userId, username); concurrent misses for one id share a single query. Mapped back
+    // from userId to evict by id
+    private AsyncCache<String, UserIdentity> identityCache;
+    private Cache<String, String> keycloakIdsByUserId;
+
+    // userId -> profile and ETag, plus username -> userId for the "own profile" lookup
+    private AsyncCache<String, VersionedUserProfile> profileCache;
+    private Cache<String, String> profileIdsByUsername;
+
+    @PostConstruct
+    void initCaches() {
+        identityCache = Caffeine.newBuilder()
+                .maximumSize(identityCacheMaximumSize)
+                .expireAfterWrite(Duration.ofSeconds(identityCacheTtlSeconds))
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, identityCache.synchronous(), "user.identity.reactive");
+        keycloakIdsByUserId = Caffeine.newBuilder()
+                .maximumSize(identityCacheMaximumSize)
+                .expireAfterWrite(Duration.ofSeconds(identityCacheTtlSeconds))
+                .build();
+
+        profileCache = Caffeine.newBuilder()
+                .maximumSize(profileCacheMaximumSize)
+                .expireAfterWrite(Duration.ofSeconds(profileCacheTtlSeconds))
+                .recordStats()
+                .buildAsync();
+        profileIdsByUsername = Caffeine.newBuilder()
+                .maximumSize(profileCacheMaximumSize)
+                .expireAfterWrite(Duration.ofSeconds(profileCacheTtlSeconds))
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, profileCache.synchronous(), "user.profile.reactive");
+    }
+
+    /**
+     * Journals the user in the outbox, like {@link UserService#createUser}. The journal write and its
+     * fsync block, so they run on the bounded elastic scheduler.
+     */
+    public Mono<User> createUser(UserRegistrationRequest request, String keycloakId) {
+        User user = User.builder()
+                .id(new ObjectId().toHexString())
+                .username(request.getUsername())
+                .email(request.getEmail())
+                .firstName(request.getFirstName())
+                .lastName(request.getLastName())
+                .keycloakId(keycloakId)
+                .createdAt(LocalDateTime.now())
+                .updatedAt(LocalDateTime.now())
+                .build();
+
+        return Mono.fromCallable(() -> {
+                    userOutbox.append(user);
+                    return user;
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnNext(saved -> {
+                    identityCache.put(keycloakId, CompletableFuture.completedFuture(new UserIdentity(saved.getId(), saved.getUsername())));
+                    keycloakIdsByUserId.put(saved.getId(), keycloakId);
+                    availabilityIndex.add(saved);
+                });
+    }
+
+    public Mono<Boolean> isUsernameTaken(String username) {
+        return availabilityIndex.mayContainUsername(username)
+                ? userRepository.existsByUsername(username)
+                : Mono.just(false);
+    }
+
+    public Mono<Boolean> isEmailTaken(String email) {
+        return availabilityIndex.mayContainEmail(email)
+                ? userRepository.existsByEmail(email)
+                : Mono.just(false);
+    }
+
+    public Mono<VersionedUserProfile> getUserProfile(String userId) {
+        return Mono.fromFuture(profileCache.get(userId,
+                        (id, executor) -> userRepository.findProfileById(id)
+                                .switchIfEmpty(Mono.defer(() -> Mono.justOrEmpty(userOutbox.pendingById(id).map(UserService::toProfileView))))
+                                .map(UserService::toVersionedProfile)
+                                .toFuture()))
+                .switchIfEmpty(Mono.error(() -> new ResourceNotFoundException("User not found with id: " + userId)));
+    }
+
+    public Mono<VersionedUserProfile> getUserProfileByUsername(String username) {
+        String userId = profileIdsByUsername.getIfPresent(username);
+        CompletableFuture<VersionedUserProfile> cached = userId == null ? null : profileCache.getIfPresent(userId);
+        if (cached != null) {
+            // After a rename the old username still maps to the id until it expires
+            return Mono.fromFuture(cached)
+                    .filter(profile -> username.equals(profile.getProfile().getUsername()))
+                    .switchIfEmpty(Mono.defer(() -> loadProfileByUsername(username)));
+        }
+        return loadProfileByUsername(username);
+    }
+
+    private Mono<VersionedUserProfile> loadProfileByUsername(String username) {
+        return userRepository.findProfileByUsername(username)
+                .switchIfEmpty(Mono.defer(() -> Mono.justOrEmpty(userOutbox.pendingByUsername(username).map(UserService::toProfileView))))
+                .map(UserService::toVersionedProfile)
+                .doOnNext(profile -> {
+                    String id = profile.getProfile().getId();
+                    profileCache.put(id, CompletableFuture.completedFuture(profile));
+                    profileIdsByUsername.put(username, id);
+                })
+                .switchIfEmpty(Mono.error(() -> new ResourceNotFoundException("User not found with username: " + username)));
+    }
+
+    public Mono<UserIdentity> getIdentityByKeycloakId(String keycloakId) {
+        return Mono.fromFuture(identityCache.get(keycloakId,
+                        (id, executor) -> userRepository.findIdentityByKeycloakId(id)
+                                .switchIfEmpty(Mono.defer(() -> Mono.justOrEmpty(userOutbox.pendingByKeycloakId(id)
+                                        .map(user -> new UserIdentity(user.getId(), user.getUsername())))))
+                                .doOnNext(found -> keycloakIdsByUserId.put(found.getId(), id))
+                                .toFuture()))
+                .switchIfEmpty(Mono.error(() -> new ResourceNotFoundException("User not found with keycloakId: " + keycloakId)));
+    }
+
+    @Override
+    public void evictUser(User user) {
+        if (user.getKeycloakId() != null) {
+            identityCache.synchronous().invalidate(user.getKeycloakId());
+        }
+        if (user.getId() != null) {
+            profileCache.synchronous().invalidate(user.getId());
+        }
+        if (user.getUsername() != null) {
+            profileIdsByUsername.invalidate(user.getUsername());
+        }
+    }
+
+    @Override
+    public void evictUserById(String userId) {
+        String keycloakId = keycloakIdsByUserId.getIfPresent(userId);
+        if (keycloakId != null) {
+            identityCache.synchronous().invalidate(keycloakId);
+            keycloakIdsByUserId.invalidate(userId);
+        }
+        VersionedUserProfile profile = profileCache.synchronous().getIfPresent(userId);
+        if (profile != null) {
+            profileIdsByUsername.invalidate(profile.getProfile().getUsername());
+        }
+        profileCache.synchronous().invalidate(userId);
+    }
+
+    @Override
+    public void evictAllUsers() {
+        identityCache.synchronous().invalidateAll();
+        keycloakIdsByUserId.invalidateAll();
+        profileCache.synchronous().invalidateAll();
+        profileIdsByUsername.invalidateAll();
+    }
+
+    @Override
+    public void capTtl(Duration ttl) {
+        Duration identityTtl = Duration.ofSeconds(identityCacheTtlSeconds);
+        Duration profileTtl = Duration.ofSeconds(profileCacheTtlSeconds);
+        UserCacheEvictor.applyTtl(identityCache.synchronous(), identityTtl, ttl);
+        UserCacheEvictor.applyTtl(keycloakIdsByUserId, identityTtl, ttl);
+        UserCacheEvictor.applyTtl(profileCache.synchronous(), profileTtl, ttl);
+        UserCacheEvictor.applyTtl(profileIdsByUsername, profileTtl, ttl);
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.api.service;
+
+import com.example.api.client.KeycloakCallLimiter;
+import com.example.api.client.KeycloakOperation;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.admin.client.Keycloak;
+import org.keycloak.representations.idm.RoleRepresentation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the realm's role representations in memory so that role assignment does not have to look
+ * each role up first. Refreshed periodically; an unknown role name triggers a one-off reload.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RealmRoleCache {
+
+    @Value("${keycloak.realm}")
+    private String realm;
+
+    private final Keycloak keycloakAdminClient;
+    private final KeycloakCallLimiter callLimiter;
+
+    private volatile Map<String, RoleRepresentation> roles = Map.of();
+
+    @Scheduled(fixedDelayString = "${keycloak-client.roles.refresh-interval-ms:300000}")
+    public void refresh() {
+        try {
+            roles = callLimiter.call(KeycloakOperation.ADMIN, () -> keycloakAdminClient.realm(realm).roles().list()).stream()
+                    .collect(Collectors.toUnmodifiableMap(RoleRepresentation::getName, Function.identity()));
+        } catch (Exception e) {
+            log.warn("Could not refresh realm roles: {}", e.getMessage());
+        }
+    }
+
+    public List<RoleRepresentation> getRoles(List<String> names) {
+        if (!roles.keySet().containsAll(names)) {
+            refresh();
+        }
+        return names.stream()
+                .map(name -> {
+                    RoleRepresentation role = roles.get(name);
+                    if (role == null) {
+                        throw new IllegalStateException("Realm role not found: " + name);
+                    }
+                    return role;
+                })
+                .collect(Collectors.toList());
+    }
+}
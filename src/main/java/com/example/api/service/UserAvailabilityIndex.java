@@ -0,0 +1,163 @@
+package com.example.api.service;
+
+import com.example.api.model.User;
+import com.example.api.model.UserHandle;
+import com.example.api.repository.UserRepository;
+import com.example.api.util.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * In-memory membership index of taken usernames and emails. Two Bloom filters answer "definitely
+ * free" without any I/O; a possible hit is confirmed with an exact {@code exists} query. Until the
+ * filters have been built from the {@code users} collection every check goes to the database.
+ * <p>
+ * The filters are built on a background thread once the application is ready, so an unreachable
+ * database delays the index but never startup; a failed build is retried with exponential backoff.
+ */
+@Component
+@Slf4j
+public class UserAvailabilityIndex {
+
+    @Value("${user-cache.availability.expected-users:1000000}")
+    private long expectedUsers;
+
+    @Value("${user-cache.availability.false-positive-probability:0.01}")
+    private double falsePositiveProbability;
+
+    @Value("${user-cache.availability.retry-interval-ms:1000}")
+    private long retryIntervalMs;
+
+    @Value("${user-cache.availability.max-retry-interval-ms:60000}")
+    private long maxRetryIntervalMs;
+
+    private final UserRepository userRepository;
+    private final Counter filterRejections;
+    private final Counter exactChecks;
+
+    private volatile BloomFilter usernames;
+    private volatile BloomFilter emails;
+    private volatile boolean ready;
+    private volatile boolean running;
+    private Thread builder;
+
+    public UserAvailabilityIndex(UserRepository userRepository, MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.filterRejections = meterRegistry.counter("user.availability.checks", "result", "filtered");
+        this.exactChecks = meterRegistry.counter("user.availability.checks", "result", "exact");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        builder = new Thread(this::buildWithRetry, "user-availability-index");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    @PreDestroy
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        if (builder != null) {
+            builder.interrupt();
+            builder.join(1000);
+            builder = null;
+        }
+    }
+
+    private void buildWithRetry() {
+        long backoff = retryIntervalMs;
+        while (running) {
+            try {
+                build();
+                return;
+            } catch (RuntimeException e) {
+                // Checks keep going to the database until a build succeeds
+                log.warn("Building the availability index failed, retrying in {} ms: {}", backoff, e.getMessage());
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            backoff = Math.min(backoff * 2, maxRetryIntervalMs);
+        }
+    }
+
+    public void build() {
+        long count = userRepository.count();
+        long capacity = Math.max(expectedUsers, count * 2);
+        BloomFilter newUsernames = new BloomFilter(capacity, falsePositiveProbability);
+        BloomFilter newEmails = new BloomFilter(capacity, falsePositiveProbability);
+        usernames = newUsernames;
+        emails = newEmails;
+
+        // Users created while the stream runs are added to the new filters by add()
+        try (Stream<UserHandle> handles = userRepository.streamHandlesBy()) {
+            handles.forEach(handle -> {
+                newUsernames.add(normalize(handle.getUsername()));
+                newEmails.add(normalize(handle.getEmail()));
+            });
+        }
+        ready = true;
+        log.info("Built availability index for {} users ({} KB)", count,
+                (newUsernames.sizeInBytes() + newEmails.sizeInBytes()) / 1024);
+    }
+
+    public void add(User user) {
+        BloomFilter currentUsernames = usernames;
+        BloomFilter currentEmails = emails;
+        if (currentUsernames != null) {
+            currentUsernames.add(normalize(user.getUsername()));
+            currentEmails.add(normalize(user.getEmail()));
+        }
+    }
+
+    public boolean isUsernameTaken(String username) {
+        return mayContainUsername(username) && userRepository.existsByUsername(username);
+    }
+
+    public boolean isEmailTaken(String email) {
+        return mayContainEmail(email) && userRepository.existsByEmail(email);
+    }
+
+    /**
+     * @return {@code false} if the username is certainly free; {@code true} if it needs an exact check
+     */
+    public boolean mayContainUsername(String username) {
+        return mayContain(usernames, username);
+    }
+
+    /**
+     * @return {@code false} if the email is certainly free; {@code true} if it needs an exact check
+     */
+    public boolean mayContainEmail(String email) {
+        return mayContain(emails, email);
+    }
+
+    private boolean mayContain(BloomFilter filter, String value) {
+        if (ready && !filter.mightContain(normalize(value))) {
+            filterRejections.increment();
+            return false;
+        }
+        exactChecks.increment();
+        return true;
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.ROOT);
+    }
+}
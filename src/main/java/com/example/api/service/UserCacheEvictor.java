@@ -0,0 +1,33 @@
+package com.example.api.service;
+
+import com.example.api.model.User;
+import com.github.benmanes.caffeine.cache.Cache;
+
+import java.time.Duration;
+
+/**
+ * Implemented by every component that keeps cached copies of {@link User} data.
+ */
+public interface UserCacheEvictor {
+
+    void evictUser(User user);
+
+    /**
+     * Evicts a user known only by its id, as after a delete.
+     */
+    void evictUserById(String userId);
+
+    void evictAllUsers();
+
+    /**
+     * Caps how long cached entries may live: a short TTL while changes made by other nodes cannot be
+     * seen, or {@code null} to go back to the configured TTLs.
+     */
+    default void capTtl(Duration ttl) {
+    }
+
+    static void applyTtl(Cache<?, ?> cache, Duration configured, Duration cap) {
+        Duration ttl = cap == null || cap.compareTo(configured) > 0 ? configured : cap;
+        cache.policy().expireAfterWrite().ifPresent(expiration -> expiration.setExpiresAfter(ttl));
+    }
+}
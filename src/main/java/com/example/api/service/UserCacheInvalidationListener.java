@@ -0,0 +1,31 @@
+package com.example.api.service;
+
+import com.example.api.model.User;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Evicts cached user data whenever a {@link User} is saved or deleted through Spring Data.
+ */
+@Component
+@RequiredArgsConstructor
+public class UserCacheInvalidationListener extends AbstractMongoEventListener<User> {
+
+    private final List<UserCacheEvictor> evictors;
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<User> event) {
+        evictors.forEach(evictor -> evictor.evictUser(event.getSource()));
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<User> event) {
+        // Delete events only carry the query, so the affected keycloakIds are unknown
+        evictors.forEach(UserCacheEvictor::evictAllUsers);
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.api.service;
+
+import com.example.api.model.User;
+import com.mongodb.MongoServerException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the in-process user caches of every replica coherent. Tails the change stream of the
+ * {@code users} collection and evicts each changed user from all {@link UserCacheEvictor}s, and adds
+ * users created on other nodes to the local {@link UserAvailabilityIndex}.
+ * <p>
+ * After a stream error the watcher resumes from the last token it saw, so events written while it
+ * was reconnecting are still delivered. While the stream is down, including on servers that are not
+ * a replica set, the caches fall back to a short TTL; if the stream cannot be resumed, every cache
+ * is cleared once it is back.
+ * <p>
+ * The resume token is kept in memory only. That is deliberate: the caches it protects are in-memory
+ * too and start empty, so after a restart the watcher opens a fresh stream and nothing written
+ * before it can be stale here.
+ */
+@Component
+@ConditionalOnProperty(name = "user-cache.change-stream.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class UserChangeStreamWatcher {
+
+    private static final String COLLECTION = "users";
+    // Resume token no longer in the oplog, or the collection's stream was invalidated
+    private static final Set<Integer> NON_RESUMABLE_ERRORS = Set.of(260, 280, 286);
+    private static final int NOT_A_REPLICA_SET = 40573;
+
+    @Value("${user-cache.change-stream.fallback-ttl-seconds:30}")
+    private long fallbackTtlSeconds;
+
+    @Value("${user-cache.change-stream.retry-interval-ms:5000}")
+    private long retryIntervalMs;
+
+    @Value("${user-cache.change-stream.max-await-ms:1000}")
+    private long maxAwaitMs;
+
+    private final MongoTemplate mongoTemplate;
+    private final List<UserCacheEvictor> evictors;
+    private final UserAvailabilityIndex availabilityIndex;
+    private final MeterRegistry meterRegistry;
+
+    private final AtomicBoolean streaming = new AtomicBoolean();
+    private volatile boolean running;
+    private volatile BsonDocument resumeToken;
+    private Thread thread;
+
+    public UserChangeStreamWatcher(MongoTemplate mongoTemplate, List<UserCacheEvictor> evictors,
+                                   UserAvailabilityIndex availabilityIndex, MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.evictors = evictors;
+        this.availabilityIndex = availabilityIndex;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("user.cache.change.stream.up", streaming, up -> up.get() ? 1 : 0)
+                .description("Whether the users change stream is open, so cached users are evicted cluster-wide")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        // Until the stream is open, changes made by other nodes are invisible
+        evictors.forEach(evictor -> evictor.capTtl(Duration.ofSeconds(fallbackTtlSeconds)));
+        running = true;
+        thread = new Thread(this::run, "user-change-stream");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        if (thread != null) {
+            thread.join(maxAwaitMs * 2 + 1000);
+            thread = null;
+        }
+        setStreaming(false);
+    }
+
+    public boolean isStreaming() {
+        return streaming.get();
+    }
+
+    private void run() {
+        boolean reportedUnsupported = false;
+        while (running) {
+            try {
+                watch();
+            } catch (MongoServerException e) {
+                if (e.getCode() == NOT_A_REPLICA_SET) {
+                    if (!reportedUnsupported) {
+                        log.warn("MongoDB is not a replica set; user caches use a {}s TTL instead of change stream invalidation",
+                                fallbackTtlSeconds);
+                        reportedUnsupported = true;
+                    }
+                } else {
+                    if (NON_RESUMABLE_ERRORS.contains(e.getCode())) {
+                        resumeToken = null;
+                    }
+                    log.warn("Users change stream failed: {}", e.getMessage());
+                }
+            } catch (RuntimeException e) {
+                // Anything else, a failing evictor or event conversion included, must not end the watcher
+                if (running) {
+                    log.warn("Users change stream failed: {}", e.getMessage(), e);
+                }
+            } finally {
+                setStreaming(false);
+            }
+            sleep(retryIntervalMs);
+        }
+    }
+
+    private void watch() {
+        ChangeStreamIterable<Document> stream = mongoTemplate.getCollection(COLLECTION)
+                .watch(pipeline())
+                .fullDocument(FullDocument.UPDATE_LOOKUP)
+                .maxAwaitTime(maxAwaitMs, TimeUnit.MILLISECONDS);
+        BsonDocument resumeFrom = resumeToken;
+        if (resumeFrom != null) {
+            stream = stream.resumeAfter(resumeFrom);
+        }
+
+        try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = stream.cursor()) {
+            if (resumeFrom == null) {
+                // Changes made before this point were never seen
+                evictors.forEach(UserCacheEvictor::evictAllUsers);
+            }
+            setStreaming(true);
+            while (running) {
+                ChangeStreamDocument<Document> change = cursor.tryNext();
+                if (change != null && !apply(change)) {
+                    return;
+                }
+                // Also advances on empty batches, so an idle stream still resumes close to now
+                if (cursor.getResumeToken() != null) {
+                    resumeToken = cursor.getResumeToken();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether the stream can continue
+     */
+    private boolean apply(ChangeStreamDocument<Document> change) {
+        String operation = change.getOperationType().getValue();
+        Counter.builder("user.cache.change.stream.events")
+                .description("Change stream events applied to the local user caches")
+                .tag("operation", operation)
+                .register(meterRegistry)
+                .increment();
+
+        switch (change.getOperationType()) {
+            case INSERT:
+                // Created on another node (or here, which is harmless)
+                availabilityIndex.add(read(change.getFullDocument()));
+                return true;
+            case UPDATE:
+            case REPLACE:
+                if (change.getFullDocument() == null) {
+                    // Deleted before the lookup; evicted by id like a delete
+                    evictById(change);
+                } else {
+                    User user = read(change.getFullDocument());
+                    evictors.forEach(evictor -> evictor.evictUser(user));
+                }
+                return true;
+            case DELETE:
+                // Delete events only carry the _id; the evictors map it back to the keys they cache by
+                evictById(change);
+                return true;
+            default:
+                // drop, rename or invalidate: the stream ends and cannot be resumed
+                evictors.forEach(UserCacheEvictor::evictAllUsers);
+                resumeToken = null;
+                return false;
+        }
+    }
+
+    private void evictById(ChangeStreamDocument<Document> change) {
+        BsonValue id = change.getDocumentKey() == null ? null : change.getDocumentKey().get("_id");
+        if (id == null || !(id.isObjectId() || id.isString())) {
+            evictors.forEach(UserCacheEvictor::evictAllUsers);
+            return;
+        }
+        String userId = id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue();
+        evictors.forEach(evictor -> evictor.evictUserById(userId));
+    }
+
+    private User read(Document document) {
+        return mongoTemplate.getConverter().read(User.class, document);
+    }
+
+    private static List<Bson> pipeline() {
+        // Names of the fields an update event set
+        Document updatedFields = new Document("$map", new Document("input", new Document("$objectToArray",
+                new Document("$ifNull", List.of("$updateDescription.updatedFields", new Document()))))
+                .append("in", "$$this.k"));
+        // Updates that only stamp reconciledAt change nothing the caches hold
+        Bson cacheRelevant = Filters.or(
+                Filters.ne("operationType", "update"),
+                Filters.exists("updateDescription.removedFields.0"),
+                Filters.expr(new Document("$gt", List.of(
+                        new Document("$size", new Document("$setDifference", List.of(updatedFields, List.of("reconciledAt")))),
+                        0))));
+        // Only the fields the caches are keyed by; the rest of the document is never sent
+        return List.of(Aggregates.match(cacheRelevant), Aggregates.project(Projections.include(
+                "operationType", "documentKey", "ns", "to",
+                "fullDocument._id", "fullDocument.keycloakId", "fullDocument.username", "fullDocument.email")));
+    }
+
+    private void setStreaming(boolean up) {
+        if (streaming.getAndSet(up) != up) {
+            if (up) {
+                log.info("Users change stream open; cached users are evicted on every change");
+                evictors.forEach(evictor -> evictor.capTtl(null));
+            } else {
+                evictors.forEach(evictor -> evictor.capTtl(Duration.ofSeconds(fallbackTtlSeconds)));
+            }
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
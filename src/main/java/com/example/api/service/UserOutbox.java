@@ -0,0 +1,502 @@
+package com.example.api.service;
+
+import com.example.api.client.KeycloakCallLimiter;
+import com.example.api.client.KeycloakOperation;
+import com.example.api.model.User;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.keycloak.admin.client.Keycloak;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ws.rs.core.Response;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable outbox for the local copy of newly registered users. {@link #append} writes the user to an
+ * append-only journal on local disk and returns; a background worker upserts journaled users into
+ * MongoDB in batches, retrying with backoff until MongoDB accepts them. Registration therefore waits
+ * for a local (group-committed) fsync instead of the MongoDB primary.
+ * <p>
+ * Until a user has been applied it can be read back with the {@code pending*} lookups, so a login
+ * or profile read right after signup still finds it on this instance. A user MongoDB permanently
+ * rejects because another user already holds its username or email is an orphan in Keycloak and is
+ * deleted there.
+ * <p>
+ * The journal is replayed from the last applied sequence number on startup, and truncated once
+ * everything in it has been applied. Applying is idempotent: users are inserted by their
+ * pre-assigned id and never overwritten.
+ */
+@Component
+@Slf4j
+public class UserOutbox {
+
+    private static final String JOURNAL = "users.journal";
+    private static final String CHECKPOINT = "users.checkpoint";
+    private static final int DUPLICATE_KEY = 11000;
+
+    @Value("${user-outbox.directory:data/outbox}")
+    private String directory;
+
+    @Value("${user-outbox.fsync:true}")
+    private boolean fsync;
+
+    @Value("${user-outbox.batch-size:500}")
+    private int batchSize;
+
+    @Value("${user-outbox.flush-interval-ms:50}")
+    private long flushIntervalMs;
+
+    @Value("${user-outbox.retry-interval-ms:1000}")
+    private long retryIntervalMs;
+
+    @Value("${user-outbox.max-retry-interval-ms:30000}")
+    private long maxRetryIntervalMs;
+
+    @Value("${user-outbox.compact-bytes:16777216}")
+    private long compactBytes;
+
+    @Value("${keycloak.realm}")
+    private String realm;
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final Keycloak keycloakAdminClient;
+    private final KeycloakCallLimiter callLimiter;
+    private final Counter applied;
+    private final Counter failedBatches;
+    private final Counter orphansDeleted;
+
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    // Entries taken off the queue but not yet resolved; only touched by the worker
+    private final List<Entry> retry = new ArrayList<>();
+    private final Map<String, User> pendingByKeycloakId = new ConcurrentHashMap<>();
+    private final Map<String, User> pendingById = new ConcurrentHashMap<>();
+    private final Map<String, User> pendingByUsername = new ConcurrentHashMap<>();
+
+    private FileChannel journal;
+    private FileLock lock;
+    private long lastSeq;
+    // Only touched by the worker, after replay
+    private long checkpointedSeq;
+    private long appendedPosition;
+
+    private final Object syncLock = new Object();
+    private long syncedPosition;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public UserOutbox(MongoTemplate mongoTemplate, ObjectMapper objectMapper, Keycloak keycloakAdminClient,
+                      KeycloakCallLimiter callLimiter, MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.keycloakAdminClient = keycloakAdminClient;
+        this.callLimiter = callLimiter;
+        this.applied = meterRegistry.counter("user.outbox.applied");
+        this.failedBatches = meterRegistry.counter("user.outbox.failed.batches");
+        this.orphansDeleted = meterRegistry.counter("user.outbox.orphans.deleted");
+        Gauge.builder("user.outbox.pending", pendingById, Map::size)
+                .description("Registered users journaled but not yet written to MongoDB")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void open() throws IOException {
+        Path dir = Paths.get(directory);
+        Files.createDirectories(dir);
+        journal = FileChannel.open(dir.resolve(JOURNAL),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        lock = journal.tryLock();
+        if (lock == null) {
+            throw new IllegalStateException("User outbox " + dir.toAbsolutePath() + " is in use by another process");
+        }
+        replay(dir);
+
+        running = true;
+        worker = new Thread(this::run, "user-outbox");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    void close() throws InterruptedException, IOException {
+        // The worker drains what it can; anything left is replayed on the next start
+        running = false;
+        worker.join(flushIntervalMs + 5000);
+        if (worker.isAlive()) {
+            // Still backing off from a MongoDB failure
+            worker.interrupt();
+            worker.join(1000);
+        }
+        lock.release();
+        journal.close();
+    }
+
+    /**
+     * Journals a new user; it is written to MongoDB shortly after. The user must already have its id.
+     */
+    public void append(User user) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(user);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not serialize user " + user.getUsername(), e);
+        }
+        long position;
+        synchronized (this) {
+            long seq = lastSeq + 1;
+            // Same shape as Entry, without serializing under the lock
+            byte[] line = ("{\"seq\":" + seq + ",\"user\":" + json + "}\n").getBytes(StandardCharsets.UTF_8);
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(line);
+                while (buffer.hasRemaining()) {
+                    journal.write(buffer);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not journal user " + user.getUsername(), e);
+            }
+            lastSeq = seq;
+            appendedPosition += line.length;
+            position = appendedPosition;
+            track(user);
+            queue.add(new Entry(seq, user));
+        }
+        if (fsync) {
+            sync(position);
+        }
+    }
+
+    public Optional<User> pendingByKeycloakId(String keycloakId) {
+        return Optional.ofNullable(pendingByKeycloakId.get(keycloakId));
+    }
+
+    public Optional<User> pendingById(String id) {
+        return Optional.ofNullable(pendingById.get(id));
+    }
+
+    public Optional<User> pendingByUsername(String username) {
+        return Optional.ofNullable(pendingByUsername.get(username));
+    }
+
+    // Group commit: one force covers every append that finished before it started
+    private void sync(long position) {
+        synchronized (syncLock) {
+            if (syncedPosition >= position) {
+                return;
+            }
+            long target;
+            synchronized (this) {
+                target = appendedPosition;
+            }
+            try {
+                journal.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not sync the user outbox", e);
+            }
+            syncedPosition = target;
+        }
+    }
+
+    private void run() {
+        long backoffMs = retryIntervalMs;
+        while (running || !queue.isEmpty()) {
+            List<Entry> batch = List.of();
+            try {
+                batch = nextBatch();
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                boolean resolved = apply(batch);
+                checkpoint(batch);
+                if (resolved) {
+                    backoffMs = retryIntervalMs;
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                // Nothing in the batch is known to be written; every entry is retried
+                Set<Long> queued = new HashSet<>();
+                retry.forEach(entry -> queued.add(entry.getSeq()));
+                batch.stream().filter(entry -> !queued.contains(entry.getSeq())).forEach(retry::add);
+                if (!running) {
+                    return;
+                }
+                log.error("User outbox worker failed: {}", e.getMessage(), e);
+            }
+            failedBatches.increment();
+            if (!running) {
+                return;
+            }
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            backoffMs = Math.min(backoffMs * 2, maxRetryIntervalMs);
+        }
+    }
+
+    private List<Entry> nextBatch() throws InterruptedException {
+        List<Entry> batch = new ArrayList<>(retry);
+        retry.clear();
+        if (batch.size() < batchSize) {
+            Entry first = batch.isEmpty() ? queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS) : queue.poll();
+            if (first != null) {
+                batch.add(first);
+                queue.drainTo(batch, batchSize - batch.size());
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Upserts the batch with one unordered bulk write. Entries that fail transiently are kept for the
+     * next attempt.
+     *
+     * @return whether every entry was resolved
+     */
+    private boolean apply(List<Entry> batch) {
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        for (Entry entry : batch) {
+            Document document = new Document();
+            mongoTemplate.getConverter().write(entry.getUser(), document);
+            Update update = new Update();
+            // Insert-only, so replaying an entry never overwrites later changes to the user
+            document.forEach((field, value) -> {
+                if (!"_id".equals(field) && !"_class".equals(field)) {
+                    update.setOnInsert(field, value);
+                }
+            });
+            operations.upsert(Query.query(Criteria.where("id").is(entry.getUser().getId())), update);
+        }
+
+        Set<Integer> failed = new HashSet<>();
+        Set<Integer> conflicts = new HashSet<>();
+        Set<Integer> dropped = new HashSet<>();
+        try {
+            operations.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                (error.getCode() == DUPLICATE_KEY ? conflicts : failed).add(error.getIndex());
+            }
+            if (!failed.isEmpty()) {
+                log.warn("User outbox: {} of {} users not written to MongoDB yet: {}",
+                        failed.size(), batch.size(), e.getErrors().get(0).getMessage());
+            }
+        } catch (DataAccessException e) {
+            log.warn("User outbox: MongoDB unavailable, retrying {} users: {}", batch.size(), e.getMessage());
+            retry.addAll(batch);
+            return false;
+        }
+
+        // Resolved after the bulk write, so a MongoDB or Keycloak failure here only retries the entry
+        for (int index : conflicts) {
+            try {
+                (resolveConflict(batch.get(index)) ? dropped : failed).add(index);
+            } catch (RuntimeException e) {
+                log.warn("User outbox: could not resolve conflict for user {}: {}",
+                        batch.get(index).getUser().getUsername(), e.getMessage());
+                failed.add(index);
+            }
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            if (failed.contains(i)) {
+                retry.add(batch.get(i));
+                continue;
+            }
+            untrack(batch.get(i).getUser());
+            if (!dropped.contains(i)) {
+                applied.increment();
+            }
+        }
+        return failed.isEmpty();
+    }
+
+    /**
+     * Another document already holds one of the user's unique keys.
+     *
+     * @return whether the entry is resolved and can be dropped
+     */
+    private boolean resolveConflict(Entry entry) {
+        User user = entry.getUser();
+        if (mongoTemplate.exists(Query.query(Criteria.where("keycloakId").is(user.getKeycloakId())), User.class)) {
+            // Already stored for this Keycloak user
+            return true;
+        }
+        // The username or email belongs to another user, so this Keycloak user can never be stored
+        try {
+            callLimiter.call(KeycloakOperation.ADMIN, () -> {
+                try (Response response = keycloakAdminClient.realm(realm).users().delete(user.getKeycloakId())) {
+                    // 404: already gone
+                    if (response.getStatus() != 204 && response.getStatus() != 404) {
+                        throw new IllegalStateException("Keycloak answered " + response.getStatus());
+                    }
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.warn("User outbox: could not delete orphaned Keycloak user {}: {}", user.getKeycloakId(), e.getMessage());
+            return false;
+        }
+        orphansDeleted.increment();
+        log.warn("User outbox: deleted Keycloak user {} ({}); its username or email is taken in MongoDB",
+                user.getKeycloakId(), user.getUsername());
+        return true;
+    }
+
+    /**
+     * Records the highest sequence number below which every entry is resolved. Entries still waiting
+     * for a retry hold the checkpoint back, so they are replayed after a restart.
+     */
+    private void checkpoint(List<Entry> batch) throws InterruptedException {
+        long seq = retry.isEmpty()
+                ? batch.stream().mapToLong(Entry::getSeq).max().orElse(0)
+                : retry.stream().mapToLong(Entry::getSeq).min().getAsLong() - 1;
+        if (seq <= checkpointedSeq) {
+            return;
+        }
+        Path dir = Paths.get(directory);
+        try {
+            Path temp = dir.resolve(CHECKPOINT + ".tmp");
+            Files.write(temp, Long.toString(seq).getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, dir.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            checkpointedSeq = seq;
+            compactIfIdle();
+        } catch (IOException e) {
+            // Harmless: the entries are replayed and their upserts are no-ops
+            log.warn("User outbox: could not write checkpoint: {}", e.getMessage());
+        }
+    }
+
+    private void compactIfIdle() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                if (appendedPosition < compactBytes || !queue.isEmpty() || !retry.isEmpty()) {
+                    return;
+                }
+                journal.truncate(0);
+                journal.force(false);
+                appendedPosition = 0;
+                syncedPosition = 0;
+            }
+        }
+    }
+
+    private void replay(Path dir) throws IOException {
+        Path checkpointFile = dir.resolve(CHECKPOINT);
+        long checkpoint = Files.exists(checkpointFile)
+                ? Long.parseLong(new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8).trim())
+                : 0;
+        lastSeq = checkpoint;
+        checkpointedSeq = checkpoint;
+        int replayed = 0;
+        // Offset just past the last newline; anything after it is a line torn by a crash mid-write
+        long complete = 0;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(dir.resolve(JOURNAL)))) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long offset = 0;
+            int b;
+            while ((b = in.read()) != -1) {
+                offset++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                complete = offset;
+                Entry entry;
+                try {
+                    entry = objectMapper.readValue(line.toByteArray(), Entry.class);
+                } catch (IOException e) {
+                    log.warn("User outbox: skipping unreadable journal line: {}", e.getMessage());
+                    continue;
+                } finally {
+                    line.reset();
+                }
+                lastSeq = Math.max(lastSeq, entry.getSeq());
+                if (entry.getSeq() > checkpoint) {
+                    track(entry.getUser());
+                    queue.add(entry);
+                    replayed++;
+                }
+            }
+        }
+        if (complete < journal.size()) {
+            // The torn line was never acknowledged. Cut it off, or the next append would be written
+            // straight after it and the two would read back as one unreadable line
+            log.warn("User outbox: dropping {} bytes of a torn last journal line", journal.size() - complete);
+            journal.truncate(complete);
+            journal.force(false);
+        }
+        appendedPosition = journal.size();
+        syncedPosition = appendedPosition;
+        if (replayed > 0) {
+            log.info("User outbox: replaying {} users not yet written to MongoDB", replayed);
+        }
+    }
+
+    private void track(User user) {
+        pendingByKeycloakId.put(user.getKeycloakId(), user);
+        pendingById.put(user.getId(), user);
+        pendingByUsername.put(user.getUsername(), user);
+    }
+
+    private void untrack(User user) {
+        pendingByKeycloakId.remove(user.getKeycloakId(), user);
+        pendingById.remove(user.getId(), user);
+        pendingByUsername.remove(user.getUsername(), user);
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class Entry {
+        private long seq;
+        private User user;
+    }
+}
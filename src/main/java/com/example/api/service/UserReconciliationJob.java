@@ -0,0 +1,605 @@
+package com.example.api.service;
+
+import com.example.api.client.KeycloakCallLimiter;
+import com.example.api.client.KeycloakOperation;
+import com.example.api.dto.ReconciliationStatus;
+import com.example.api.model.ReconciliationCheckpoint;
+import com.example.api.model.ReconciliationCheckpoint.State;
+import com.example.api.model.User;
+import com.example.api.repository.UserRepository;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.keycloak.admin.client.Keycloak;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ws.rs.NotFoundException;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Brings the {@code users} collection in line with the Keycloak realm, which is the source of truth.
+ * Keycloak users are read a page at a time, {@code parallelism} pages at once. Each page is diffed
+ * against MongoDB with one {@code $in} lookup and applied with one unordered bulk write: missing
+ * users are inserted, changed usernames, emails and names are updated, and unchanged users are
+ * stamped with {@code reconciledAt}. Memory is bounded by the pages in flight.
+ * <p>
+ * A sweep then visits the stored users the pages did not stamp. Offset paging can skip users while
+ * the realm changes, so each of them is looked up in Keycloak and only moved to
+ * {@code users_tombstones}, freeing its username and email, if Keycloak no longer has it.
+ * <p>
+ * Runs on a schedule and on demand. Progress is checkpointed in {@link ReconciliationCheckpoint},
+ * which is also a lease held by one instance at a time; a run cut short by a restart or a failure
+ * resumes from its checkpoint on the next start, here or on another instance.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class UserReconciliationJob {
+
+    private static final String CHECKPOINT_ID = "users";
+    private static final String TOMBSTONES = "users_tombstones";
+    private static final int DUPLICATE_KEY = 11000;
+
+    @Value("${reconciliation.enabled:true}")
+    private boolean enabled;
+
+    @Value("${reconciliation.page-size:200}")
+    private int pageSize;
+
+    @Value("${reconciliation.parallelism:4}")
+    private int parallelism;
+
+    @Value("${reconciliation.min-age-seconds:300}")
+    private long minAgeSeconds;
+
+    @Value("${reconciliation.lease-seconds:120}")
+    private long leaseSeconds;
+
+    @Value("${keycloak.realm}")
+    private String realm;
+
+    private final MongoTemplate mongoTemplate;
+    private final UserRepository userRepository;
+    private final Keycloak keycloakAdminClient;
+    private final KeycloakCallLimiter callLimiter;
+    private final UserOutbox outbox;
+    private final UserAvailabilityIndex availabilityIndex;
+    private final List<UserCacheEvictor> evictors;
+    private final MeterRegistry meterRegistry;
+
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private ExecutorService coordinator;
+    private ExecutorService workers;
+
+    @PostConstruct
+    void init() {
+        coordinator = Executors.newSingleThreadExecutor(threads("user-reconciliation"));
+        workers = Executors.newFixedThreadPool(parallelism, threads("user-reconciliation-worker"));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        // An interrupted run keeps its checkpoint and is resumed once the lease expires
+        coordinator.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    @Scheduled(fixedDelayString = "${reconciliation.interval-ms:3600000}",
+            initialDelayString = "${reconciliation.initial-delay-ms:300000}")
+    public void scheduledRun() {
+        if (enabled) {
+            start();
+        }
+    }
+
+    /**
+     * Starts a run in the background; it exits at once if another instance holds the lease.
+     *
+     * @return false if a run is already in progress on this instance
+     */
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        coordinator.execute(() -> {
+            try {
+                run();
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    public ReconciliationStatus status() {
+        ReconciliationCheckpoint checkpoint = mongoTemplate.findById(CHECKPOINT_ID, ReconciliationCheckpoint.class);
+        if (checkpoint == null) {
+            return ReconciliationStatus.builder().running(running.get()).build();
+        }
+        return ReconciliationStatus.builder()
+                .running(running.get())
+                .state(checkpoint.getState())
+                .runStartedAt(checkpoint.getRunStartedAt())
+                .completedAt(checkpoint.getCompletedAt())
+                .pagesDone(checkpoint.getNextPage())
+                .pagesComplete(checkpoint.isPagesComplete())
+                .inserted(checkpoint.getInserted())
+                .updated(checkpoint.getUpdated())
+                .tombstoned(checkpoint.getTombstoned())
+                .conflicts(checkpoint.getConflicts())
+                .error(checkpoint.getError())
+                .build();
+    }
+
+    private void run() {
+        ReconciliationCheckpoint checkpoint;
+        try {
+            checkpoint = acquire();
+        } catch (DataAccessException e) {
+            log.warn("User reconciliation skipped, MongoDB unavailable: {}", e.getMessage());
+            return;
+        }
+        if (checkpoint == null) {
+            log.debug("User reconciliation is running on another instance");
+            return;
+        }
+        try {
+            if (!checkpoint.isPagesComplete()) {
+                reconcilePages(checkpoint);
+            }
+            sweep(checkpoint);
+            finish(State.COMPLETED, null);
+            ReconciliationStatus result = status();
+            log.info("User reconciliation completed: {} inserted, {} updated, {} tombstoned, {} conflicts",
+                    result.getInserted(), result.getUpdated(), result.getTombstoned(), result.getConflicts());
+        } catch (RuntimeException e) {
+            log.warn("User reconciliation failed, the next run resumes from its checkpoint: {}", e.getMessage());
+            finish(State.FAILED, String.valueOf(e.getMessage()));
+        }
+    }
+
+    /**
+     * Takes the lease. A run that did not complete is resumed, anything else starts a new one.
+     *
+     * @return the checkpoint to continue from, or null if another instance holds the lease
+     */
+    private ReconciliationCheckpoint acquire() {
+        LocalDateTime now = LocalDateTime.now();
+        Query free = Query.query(Criteria.where("id").is(CHECKPOINT_ID)
+                .orOperator(Criteria.where("leaseUntil").lt(now), Criteria.where("owner").is(owner)));
+        ReconciliationCheckpoint previous;
+        try {
+            // Returns the document as it was before, or null if it was just created
+            previous = mongoTemplate.findAndModify(free,
+                    new Update().set("owner", owner).set("leaseUntil", now.plusSeconds(leaseSeconds)),
+                    FindAndModifyOptions.options().upsert(true), ReconciliationCheckpoint.class);
+        } catch (DuplicateKeyException e) {
+            // The document exists but did not match: the lease is held
+            return null;
+        }
+
+        if (previous != null && previous.getState() != State.COMPLETED && previous.getRunStartedAt() != null) {
+            log.info("Resuming user reconciliation started at {} from page {}", previous.getRunStartedAt(), previous.getNextPage());
+            mongoTemplate.updateFirst(owned(), new Update().set("state", State.RUNNING).unset("error"),
+                    ReconciliationCheckpoint.class);
+            return previous;
+        }
+        ReconciliationCheckpoint fresh = ReconciliationCheckpoint.builder()
+                .id(CHECKPOINT_ID)
+                .state(State.RUNNING)
+                .owner(owner)
+                .leaseUntil(now.plusSeconds(leaseSeconds))
+                .runStartedAt(now)
+                .build();
+        mongoTemplate.save(fresh);
+        return fresh;
+    }
+
+    private void reconcilePages(ReconciliationCheckpoint checkpoint) {
+        LocalDateTime runStartedAt = checkpoint.getRunStartedAt();
+        PageProgress progress = new PageProgress(checkpoint.getNextPage());
+        AtomicInteger next = new AtomicInteger(checkpoint.getNextPage());
+        // Set by the first short page
+        AtomicInteger end = new AtomicInteger(Integer.MAX_VALUE);
+        AtomicBoolean failed = new AtomicBoolean();
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < parallelism; i++) {
+            tasks.add(() -> {
+                try {
+                    int page;
+                    while (!failed.get() && (page = next.getAndIncrement()) < end.get()) {
+                        PageChanges changes = reconcilePage(page, runStartedAt);
+                        if (changes.last) {
+                            end.accumulateAndGet(page + 1, Math::min);
+                        }
+                        progress.complete(page, changes);
+                    }
+                    return null;
+                } catch (RuntimeException e) {
+                    failed.set(true);
+                    throw e;
+                }
+            });
+        }
+        awaitAll(tasks);
+
+        UpdateResult result = mongoTemplate.updateFirst(owned(),
+                new Update().set("pagesComplete", true).set("nextPage", end.get()), ReconciliationCheckpoint.class);
+        requireLease(result);
+    }
+
+    /**
+     * Applies one page of Keycloak users with a single bulk write.
+     */
+    private PageChanges reconcilePage(int page, LocalDateTime runStartedAt) {
+        List<UserRepresentation> representations = callLimiter.call(KeycloakOperation.ADMIN,
+                () -> keycloakAdminClient.realm(realm).users().list(page * pageSize, pageSize));
+        PageChanges changes = new PageChanges(representations.size() < pageSize);
+        if (representations.isEmpty()) {
+            return changes;
+        }
+
+        Map<String, User> stored = userRepository.findByKeycloakIdIn(representations.stream()
+                        .map(UserRepresentation::getId)
+                        .collect(Collectors.toList()))
+                .stream()
+                .collect(Collectors.toMap(User::getKeycloakId, Function.identity()));
+        LocalDateTime now = LocalDateTime.now();
+        long newestInsertable = System.currentTimeMillis() - minAgeSeconds * 1000;
+
+        List<User> inserts = new ArrayList<>();
+        List<User[]> updates = new ArrayList<>();
+        List<String> unchanged = new ArrayList<>();
+        for (UserRepresentation representation : representations) {
+            User user = stored.get(representation.getId());
+            if (user == null) {
+                Long created = representation.getCreatedTimestamp();
+                // Recent signups may still be on their way from an outbox
+                if ((created == null || created <= newestInsertable)
+                        && outbox.pendingByKeycloakId(representation.getId()).isEmpty()) {
+                    inserts.add(toUser(representation, now));
+                }
+            } else if (differs(user, representation)) {
+                User changed = User.builder()
+                        .id(user.getId())
+                        .keycloakId(user.getKeycloakId())
+                        .username(representation.getUsername())
+                        .email(representation.getEmail())
+                        .firstName(representation.getFirstName())
+                        .lastName(representation.getLastName())
+                        .build();
+                updates.add(new User[]{user, changed});
+            } else {
+                unchanged.add(user.getId());
+            }
+        }
+
+        // Inserts first, then updates, so a write error's index says which kind failed
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        inserts.forEach(operations::insert);
+        for (User[] update : updates) {
+            User changed = update[1];
+            operations.updateOne(
+                    Query.query(Criteria.where("id").is(changed.getId()).and("keycloakId").is(changed.getKeycloakId())),
+                    new Update()
+                            .set("username", changed.getUsername())
+                            .set("email", changed.getEmail())
+                            .set("firstName", changed.getFirstName())
+                            .set("lastName", changed.getLastName())
+                            .set("updatedAt", now)
+                            .set("reconciledAt", now));
+        }
+        if (!unchanged.isEmpty()) {
+            operations.updateMulti(Query.query(Criteria.where("id").in(unchanged)), new Update().set("reconciledAt", now));
+        }
+
+        TreeSet<Integer> conflicting = new TreeSet<>();
+        try {
+            operations.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) {
+                    throw e;
+                }
+                conflicting.add(error.getIndex());
+            }
+        }
+
+        for (int i = 0; i < inserts.size(); i++) {
+            if (!conflicting.contains(i)) {
+                availabilityIndex.add(inserts.get(i));
+                changes.inserted++;
+            }
+        }
+        for (int i = 0; i < updates.size(); i++) {
+            User[] update = updates.get(i);
+            if (conflicting.contains(inserts.size() + i)) {
+                continue;
+            }
+            // Both the old and the new username may be cached
+            evictors.forEach(evictor -> {
+                evictor.evictUser(update[0]);
+                evictor.evictUser(update[1]);
+            });
+            changes.updated++;
+        }
+        changes.conflicts = conflicting.size();
+        if (!conflicting.isEmpty()) {
+            // Another document holds the username or email; the sweep tombstones it if it is stale
+            log.warn("User reconciliation: {} users on page {} conflict with the username or email of another user",
+                    conflicting.size(), page);
+        }
+        count("inserted", changes.inserted);
+        count("updated", changes.updated);
+        count("conflict", changes.conflicts);
+        return changes;
+    }
+
+    /**
+     * Checks every stored user the pages did not stamp against Keycloak, tombstoning those it no
+     * longer has. Users created after the run started were never expected to be stamped.
+     */
+    private void sweep(ReconciliationCheckpoint checkpoint) {
+        LocalDateTime runStartedAt = checkpoint.getRunStartedAt();
+        String after = checkpoint.getSweptThroughId();
+        while (true) {
+            Criteria criteria = Criteria.where("keycloakId").exists(true)
+                    .and("createdAt").not().gte(runStartedAt)
+                    .orOperator(Criteria.where("reconciledAt").exists(false), Criteria.where("reconciledAt").lt(runStartedAt));
+            if (after != null) {
+                // Ids are only converted to ObjectIds for equality and $in
+                criteria = criteria.and("id").gt(ObjectId.isValid(after) ? new ObjectId(after) : after);
+            }
+            Query query = Query.query(criteria).with(Sort.by("id")).limit(pageSize);
+            List<User> candidates = mongoTemplate.find(query, User.class);
+            if (candidates.isEmpty()) {
+                return;
+            }
+
+            List<Callable<Boolean>> lookups = candidates.stream()
+                    .map(user -> (Callable<Boolean>) () -> existsInKeycloak(user.getKeycloakId()))
+                    .collect(Collectors.toList());
+            List<Boolean> exists = awaitAll(lookups);
+            List<User> gone = new ArrayList<>();
+            List<String> present = new ArrayList<>();
+            for (int i = 0; i < candidates.size(); i++) {
+                if (exists.get(i)) {
+                    present.add(candidates.get(i).getId());
+                } else {
+                    gone.add(candidates.get(i));
+                }
+            }
+            if (!present.isEmpty()) {
+                mongoTemplate.updateMulti(Query.query(Criteria.where("id").in(present)),
+                        new Update().set("reconciledAt", LocalDateTime.now()), User.class);
+            }
+            tombstone(gone);
+
+            after = candidates.get(candidates.size() - 1).getId();
+            UpdateResult result = mongoTemplate.updateFirst(owned(), new Update()
+                            .set("sweptThroughId", after)
+                            .set("leaseUntil", LocalDateTime.now().plusSeconds(leaseSeconds))
+                            .inc("tombstoned", gone.size()),
+                    ReconciliationCheckpoint.class);
+            requireLease(result);
+        }
+    }
+
+    private boolean existsInKeycloak(String keycloakId) {
+        try {
+            callLimiter.call(KeycloakOperation.ADMIN,
+                    () -> keycloakAdminClient.realm(realm).users().get(keycloakId).toRepresentation());
+            return true;
+        } catch (NotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Copies the users to the tombstone collection, then deletes them. Both steps are idempotent, so
+     * a sweep interrupted in between is simply repeated.
+     */
+    private void tombstone(List<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<WriteModel<Document>> copies = new ArrayList<>();
+        List<Object> ids = new ArrayList<>();
+        for (User user : users) {
+            Document document = new Document();
+            mongoTemplate.getConverter().write(user, document);
+            document.put("deletedAt", now);
+            copies.add(new ReplaceOneModel<>(Filters.eq("_id", document.get("_id")), document,
+                    new ReplaceOptions().upsert(true)));
+            ids.add(document.get("_id"));
+        }
+        mongoTemplate.getCollection(TOMBSTONES).bulkWrite(copies);
+        // Straight to the driver: MongoTemplate.remove publishes an AfterDeleteEvent, which clears
+        // every cached user; only these users are evicted below
+        mongoTemplate.getCollection(mongoTemplate.getCollectionName(User.class)).deleteMany(Filters.in("_id", ids));
+
+        users.forEach(user -> evictors.forEach(evictor -> evictor.evictUser(user)));
+        count("tombstoned", users.size());
+        log.info("User reconciliation: tombstoned {} users no longer in Keycloak", users.size());
+    }
+
+    private void finish(State state, String error) {
+        Update update = new Update().set("state", state).set("leaseUntil", LocalDateTime.now());
+        if (state == State.COMPLETED) {
+            update.set("completedAt", LocalDateTime.now()).unset("error");
+        } else {
+            update.set("error", error);
+        }
+        // Matches nothing if the lease was lost, leaving the checkpoint to its new owner
+        mongoTemplate.updateFirst(owned(), update, ReconciliationCheckpoint.class);
+    }
+
+    private Query owned() {
+        return Query.query(Criteria.where("id").is(CHECKPOINT_ID).and("owner").is(owner));
+    }
+
+    private static void requireLease(UpdateResult result) {
+        if (result.getMatchedCount() == 0) {
+            throw new IllegalStateException("Reconciliation lease lost to another instance");
+        }
+    }
+
+    private <T> List<T> awaitAll(List<Callable<T>> tasks) {
+        List<Future<T>> futures = tasks.stream().map(workers::submit).collect(Collectors.toList());
+        List<T> results = new ArrayList<>(futures.size());
+        RuntimeException failure = null;
+        // Waits for every task, so none is still writing when the run ends
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(pending -> pending.cancel(true));
+                throw new IllegalStateException("User reconciliation interrupted", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    private void count(String change, long amount) {
+        if (amount > 0) {
+            Counter.builder("user.reconciliation.changes")
+                    .description("Users inserted, updated or tombstoned to match Keycloak, and writes refused as conflicts")
+                    .tag("change", change)
+                    .register(meterRegistry)
+                    .increment(amount);
+        }
+    }
+
+    private static User toUser(UserRepresentation representation, LocalDateTime now) {
+        Long created = representation.getCreatedTimestamp();
+        return User.builder()
+                .id(new ObjectId().toHexString())
+                .username(representation.getUsername())
+                .email(representation.getEmail())
+                .firstName(representation.getFirstName())
+                .lastName(representation.getLastName())
+                .keycloakId(representation.getId())
+                .createdAt(created == null ? now : LocalDateTime.ofInstant(Instant.ofEpochMilli(created), ZoneId.systemDefault()))
+                .updatedAt(now)
+                .reconciledAt(now)
+                .build();
+    }
+
+    // Keycloak lower-cases usernames and emails, so a difference in case alone is not a change
+    private static boolean differs(User user, UserRepresentation representation) {
+        return !sameIgnoringCase(user.getUsername(), representation.getUsername())
+                || !sameIgnoringCase(user.getEmail(), representation.getEmail())
+                || !Objects.equals(user.getFirstName(), representation.getFirstName())
+                || !Objects.equals(user.getLastName(), representation.getLastName());
+    }
+
+    private static boolean sameIgnoringCase(String a, String b) {
+        return a == null ? b == null : a.equalsIgnoreCase(b);
+    }
+
+    private static ThreadFactory threads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class PageChanges {
+
+        final boolean last;
+        long inserted;
+        long updated;
+        long conflicts;
+
+        PageChanges(boolean last) {
+            this.last = last;
+        }
+    }
+
+    /**
+     * Pages finish out of order; the checkpoint only moves past a page once every page before it is
+     * done. Each completion also renews the lease.
+     */
+    private class PageProgress {
+
+        private final TreeSet<Integer> done = new TreeSet<>();
+        private int nextPage;
+
+        PageProgress(int nextPage) {
+            this.nextPage = nextPage;
+        }
+
+        synchronized void complete(int page, PageChanges changes) {
+            done.add(page);
+            while (done.remove(nextPage)) {
+                nextPage++;
+            }
+            // Counts are added now: a page redone after a resume finds its changes already applied
+            UpdateResult result = mongoTemplate.updateFirst(owned(), new Update()
+                            .set("nextPage", nextPage)
+                            .set("leaseUntil", LocalDateTime.now().plusSeconds(leaseSeconds))
+                            .inc("inserted", changes.inserted)
+                            .inc("updated", changes.updated)
+                            .inc("conflicts", changes.conflicts),
+                    ReconciliationCheckpoint.class);
+            requireLease(result);
+        }
+    }
+}
@@ -1,25 +1,100 @@
 package com.example.api.service;
 
+import com.example.api.dto.AvailabilityResponse;
 import com.example.api.dto.UserProfileResponse;
 import com.example.api.dto.UserRegistrationRequest;
 import com.example.api.exception.ResourceNotFoundException;
+import com.example.api.metrics.StageTimer;
 import com.example.api.model.User;
+import com.example.api.model.UserIdentity;
+import com.example.api.model.UserProfileView;
 import com.example.api.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
-public class UserService {
+public class UserService implements UserCacheEvictor {
 
     private final UserRepository userRepository;
+    private final MongoTemplate mongoTemplate;
+    private final UserAvailabilityIndex availabilityIndex;
+    private final UserOutbox userOutbox;
+    private final MeterRegistry meterRegistry;
+    private final StageTimer stageTimer;
 
+    @Value("${user-cache.identity.maximum-size:100000}")
+    private long identityCacheMaximumSize;
+
+    @Value("${user-cache.identity.ttl-seconds:600}")
+    private long identityCacheTtlSeconds;
+
+    @Value("${user-cache.profile.maximum-size:50000}")
+    private long profileCacheMaximumSize;
+
+    @Value("${user-cache.profile.ttl-seconds:300}")
+    private long profileCacheTtlSeconds;
+
+    // keycloakId -> (userId, username), and back from userId to evict by id
+    private Cache<String, UserIdentity> identityCache;
+    private Cache<String, String> keycloakIdsByUserId;
+
+    // userId -> profile and ETag, plus username -> userId for the "own profile" lookup
+    private Cache<String, VersionedUserProfile> profileCache;
+    private Cache<String, String> profileIdsByUsername;
+
+    @PostConstruct
+    void initCaches() {
+        identityCache = Caffeine.newBuilder()
+                .maximumSize(identityCacheMaximumSize)
+                .expireAfterWrite(Duration.ofSeconds(identityCacheTtlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, identityCache, "user.identity");
+        keycloakIdsByUserId = Caffeine.newBuilder()
+                .maximumSize(identityCacheMaximumSize)
+                .expireAfterWrite(Duration.ofSeconds(identityCacheTtlSeconds))
+                .build();
+
+        profileCache = Caffeine.newBuilder()
+                .maximumSize(profileCacheMaximumSize)
+                .expireAfterWrite(Duration.ofSeconds(profileCacheTtlSeconds))
+                .recordStats()
+                .build();
+        profileIdsByUsername = Caffeine.newBuilder()
+                .maximumSize(profileCacheMaximumSize)
+                .expireAfterWrite(Duration.ofSeconds(profileCacheTtlSeconds))
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, profileCache, "user.profile");
+    }
+
+    /**
+     * Journals the user in the outbox, which writes it to MongoDB in the background. Until then it is
+     * served from the outbox on this instance.
+     */
     public void createUser(UserRegistrationRequest request, String keycloakId) {
         User user = User.builder()
+                .id(new ObjectId().toHexString())
                 .username(request.getUsername())
                 .email(request.getEmail())
                 .firstName(request.getFirstName())
@@ -29,43 +104,169 @@ public class UserService {
                 .updatedAt(LocalDateTime.now())
                 .build();
 
-        userRepository.save(user);
+        stageTimer.record("outbox.append", "create", () -> userOutbox.append(user));
+        identityCache.put(keycloakId, new UserIdentity(user.getId(), user.getUsername()));
+        keycloakIdsByUserId.put(user.getId(), keycloakId);
+        availabilityIndex.add(user);
     }
 
-    public UserProfileResponse getUserProfile(String userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("User not found with id: " + userId));
+    /**
+     * Inserts all users with one unordered bulk write.
+     *
+     * @return the write error of each user that could not be inserted, keyed by its index
+     */
+    public Map<Integer, BulkWriteError> createUsers(List<User> users) {
+        if (users.isEmpty()) {
+            return Map.of();
+        }
+        // Failed inserts are still added; a false "maybe taken" is resolved by the exact check
+        users.forEach(availabilityIndex::add);
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class)
+                    .insert(users)
+                    .execute();
+            return Map.of();
+        } catch (BulkOperationException e) {
+            Map<Integer, BulkWriteError> failures = new HashMap<>();
+            for (BulkWriteError error : e.getErrors()) {
+                failures.put(error.getIndex(), error);
+            }
+            return failures;
+        }
+    }
 
-        return mapToUserProfileResponse(user);
+    public VersionedUserProfile getUserProfile(String userId) {
+        VersionedUserProfile profile = stageTimer.record("user.profile", "profile", () -> profileCache.get(userId,
+                id -> stageTimer.record("mongo.profile", "profile", () -> userRepository.findProfileById(id))
+                        .or(() -> userOutbox.pendingById(id).map(UserService::toProfileView))
+                        .map(UserService::toVersionedProfile)
+                        .orElse(null)));
+        if (profile == null) {
+            throw new ResourceNotFoundException("User not found with id: " + userId);
+        }
+        return profile;
     }
 
-    public UserProfileResponse getUserProfileByUsername(String username) {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new ResourceNotFoundException("User not found with username: " + username));
+    public VersionedUserProfile getUserProfileByUsername(String username) {
+        return stageTimer.record("user.profile", "profile", () -> {
+            String userId = profileIdsByUsername.getIfPresent(username);
+            VersionedUserProfile cached = userId == null ? null : profileCache.getIfPresent(userId);
+            // After a rename the old username still maps to the id until it expires
+            if (cached != null && username.equals(cached.getProfile().getUsername())) {
+                return cached;
+            }
 
-        return mapToUserProfileResponse(user);
+            VersionedUserProfile profile = stageTimer.record("mongo.profile", "profile", () -> userRepository.findProfileByUsername(username))
+                    .or(() -> userOutbox.pendingByUsername(username).map(UserService::toProfileView))
+                    .map(UserService::toVersionedProfile)
+                    .orElseThrow(() -> new ResourceNotFoundException("User not found with username: " + username));
+            String id = profile.getProfile().getId();
+            profileCache.put(id, profile);
+            profileIdsByUsername.put(username, id);
+            return profile;
+        });
+    }
+
+    public AvailabilityResponse checkAvailability(String username, String email) {
+        return AvailabilityResponse.builder()
+                .username(username)
+                .usernameAvailable(username == null ? null : !availabilityIndex.isUsernameTaken(username))
+                .email(email)
+                .emailAvailable(email == null ? null : !availabilityIndex.isEmailTaken(email))
+                .build();
+    }
+
+    public UserIdentity getIdentityByKeycloakId(String keycloakId) {
+        UserIdentity identity = stageTimer.record("user.identity", "identity", () -> identityCache.get(keycloakId,
+                id -> stageTimer.record("mongo.identity", "identity", () -> userRepository.findIdentityByKeycloakId(id)
+                        .or(() -> userOutbox.pendingByKeycloakId(id).map(user -> new UserIdentity(user.getId(), user.getUsername())))
+                        .map(found -> {
+                            keycloakIdsByUserId.put(found.getId(), id);
+                            return found;
+                        })
+                        .orElse(null))));
+        if (identity == null) {
+            throw new ResourceNotFoundException("User not found with keycloakId: " + keycloakId);
+        }
+        return identity;
     }
 
     public String getUserIdByKeycloakId(String keycloakId) {
-        return userRepository.findByKeycloakId(keycloakId)
-                .map(User::getId)
-                .orElseThrow(() -> new ResourceNotFoundException("User not found with keycloakId: " + keycloakId));
+        return getIdentityByKeycloakId(keycloakId).getId();
     }
 
     public String getUsernameByKeycloakId(String keycloakId) {
-        return userRepository.findByKeycloakId(keycloakId)
-                .map(User::getUsername)
-                .orElseThrow(() -> new ResourceNotFoundException("User not found with keycloakId: " + keycloakId));
+        return getIdentityByKeycloakId(keycloakId).getUsername();
+    }
+
+    @Override
+    public void evictUser(User user) {
+        if (user.getKeycloakId() != null) {
+            identityCache.invalidate(user.getKeycloakId());
+        }
+        if (user.getId() != null) {
+            profileCache.invalidate(user.getId());
+        }
+        if (user.getUsername() != null) {
+            profileIdsByUsername.invalidate(user.getUsername());
+        }
+    }
+
+    @Override
+    public void evictUserById(String userId) {
+        String keycloakId = keycloakIdsByUserId.getIfPresent(userId);
+        if (keycloakId != null) {
+            identityCache.invalidate(keycloakId);
+            keycloakIdsByUserId.invalidate(userId);
+        }
+        VersionedUserProfile profile = profileCache.getIfPresent(userId);
+        if (profile != null) {
+            profileIdsByUsername.invalidate(profile.getProfile().getUsername());
+        }
+        profileCache.invalidate(userId);
+    }
+
+    @Override
+    public void evictAllUsers() {
+        identityCache.invalidateAll();
+        keycloakIdsByUserId.invalidateAll();
+        profileCache.invalidateAll();
+        profileIdsByUsername.invalidateAll();
+    }
+
+    @Override
+    public void capTtl(Duration ttl) {
+        Duration identityTtl = Duration.ofSeconds(identityCacheTtlSeconds);
+        Duration profileTtl = Duration.ofSeconds(profileCacheTtlSeconds);
+        UserCacheEvictor.applyTtl(identityCache, identityTtl, ttl);
+        UserCacheEvictor.applyTtl(keycloakIdsByUserId, identityTtl, ttl);
+        UserCacheEvictor.applyTtl(profileCache, profileTtl, ttl);
+        UserCacheEvictor.applyTtl(profileIdsByUsername, profileTtl, ttl);
+    }
+
+    // For users still in the outbox
+    static UserProfileView toProfileView(User user) {
+        return new UserProfileView(user.getId(), user.getUsername(), user.getEmail(), user.getFirstName(),
+                user.getLastName(), user.getCreatedAt(), user.getUpdatedAt());
+    }
+
+    /**
+     * The ETag changes whenever {@code updatedAt} does, so clients can revalidate with {@code If-None-Match}.
+     */
+    static VersionedUserProfile toVersionedProfile(UserProfileView profile) {
+        LocalDateTime version = profile.getUpdatedAt() != null ? profile.getUpdatedAt() : profile.getCreatedAt();
+        long versionMillis = version == null ? 0 : version.toInstant(ZoneOffset.UTC).toEpochMilli();
+        return new VersionedUserProfile(mapToUserProfileResponse(profile), profile.getId() + "-" + versionMillis);
     }
 
-    private UserProfileResponse mapToUserProfileResponse(User user) {
+    static UserProfileResponse mapToUserProfileResponse(UserProfileView profile) {
         return UserProfileResponse.builder()
-                .id(user.getId())
-                .username(user.getUsername())
-                .email(user.getEmail())
-                .firstName(user.getFirstName())
-                .lastName(user.getLastName())
-                .createdAt(user.getCreatedAt())
+                .id(profile.getId())
+                .username(profile.getUsername())
+                .email(profile.getEmail())
+                .firstName(profile.getFirstName())
+                .lastName(profile.getLastName())
+                .createdAt(profile.getCreatedAt())
                 .build();
     }
 }
@@ -0,0 +1,13 @@
+package com.example.api.service;
+
+import com.example.api.dto.UserProfileResponse;
+import lombok.Value;
+
+/**
+ * A profile together with the ETag clients send back in {@code If-None-Match}.
+ */
+@Value
+public class VersionedUserProfile {
+    UserProfileResponse profile;
+    String eTag;
+}
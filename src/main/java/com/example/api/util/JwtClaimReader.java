@@ -0,0 +1,67 @@
+package com.example.api.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.Value;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Reads the identity claims of a compact JWS without building a claims map. Intended only for
+ * tokens received directly from Keycloak's token endpoint, so the signature is not checked here.
+ */
+public final class JwtClaimReader {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private JwtClaimReader() {
+    }
+
+    public static TokenIdentity readIdentity(String token) {
+        int payloadStart = token.indexOf('.') + 1;
+        int payloadEnd = token.indexOf('.', payloadStart);
+        if (payloadStart == 0 || payloadEnd < 0) {
+            throw new IllegalArgumentException("Malformed JWT");
+        }
+
+        byte[] ascii = token.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer payload = Base64.getUrlDecoder()
+                .decode(ByteBuffer.wrap(ascii, payloadStart, payloadEnd - payloadStart));
+
+        String subject = null;
+        String username = null;
+        try (JsonParser parser = JSON_FACTORY.createParser(payload.array(), payload.arrayOffset(), payload.remaining())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("JWT payload is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME && (subject == null || username == null)) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("sub".equals(field)) {
+                    subject = parser.getValueAsString();
+                } else if ("preferred_username".equals(field)) {
+                    username = parser.getValueAsString();
+                } else if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unreadable JWT payload", e);
+        }
+
+        if (subject == null) {
+            throw new IllegalArgumentException("JWT has no sub claim");
+        }
+        return new TokenIdentity(subject, username);
+    }
+
+    @Value
+    public static class TokenIdentity {
+        String subject;
+        String username;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.api.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size, lock-free table of token buckets keyed by string. Each bucket holds {@code burst}
+ * tokens and regains one every {@code refillIntervalMs}.
+ * <p>
+ * A bucket is a single {@code long}: a 24-bit key fingerprint and the time at which the bucket will
+ * be full again (the GCRA "theoretical arrival time"), updated with one CAS. A key lives in one of
+ * {@value #PROBES} consecutive slots after its hash. Buckets that have refilled are
+ * indistinguishable from absent ones and are reused as they are found, so idle keys need no
+ * sweeping. When all of a key's slots hold active buckets, the one closest to full is evicted and
+ * counted in {@link #evictions()}; memory stays at 8 bytes per slot whatever the key churn.
+ */
+public class TokenBucketTable {
+
+    private static final int PROBES = 8;
+    private static final int TIME_BITS = 40;
+    private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+
+    private final AtomicLongArray slots;
+    private final int mask;
+    private final long intervalMs;
+    private final long toleranceMs;
+    // Per-table seed, so colliding keys cannot be precomputed
+    private final long seed = ThreadLocalRandom.current().nextLong();
+    private final long epochNanos = System.nanoTime();
+    private final LongAdder evictions = new LongAdder();
+
+    public TokenBucketTable(int maxKeys, int burst, long refillIntervalMs) {
+        int size = Math.max(PROBES, Integer.highestOneBit(Math.max(1, Math.min(maxKeys, 1 << 30) - 1)) << 1);
+        this.slots = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.intervalMs = Math.max(1, refillIntervalMs);
+        this.toleranceMs = (Math.max(1, burst) - 1) * intervalMs;
+    }
+
+    /**
+     * Takes a token from {@code key}'s bucket.
+     *
+     * @return 0 if a token was taken, otherwise the milliseconds until one will be available
+     */
+    public long tryAcquire(String key) {
+        long hash = hash(key);
+        int start = (int) hash & mask;
+        long fingerprint = Math.max(1, hash >>> TIME_BITS);
+        while (true) {
+            long now = now();
+            int slot = -1;
+            long current = 0;
+            boolean found = false;
+            for (int i = 0; i < PROBES; i++) {
+                int index = (start + i) & mask;
+                long value = slots.get(index);
+                if (value >>> TIME_BITS == fingerprint) {
+                    slot = index;
+                    current = value;
+                    found = true;
+                    break;
+                }
+                // Empty slots have time 0, so they are taken first, then the bucket closest to full
+                if (slot < 0 || (value & TIME_MASK) < (current & TIME_MASK)) {
+                    slot = index;
+                    current = value;
+                }
+            }
+
+            long full = found ? Math.max(current & TIME_MASK, now) : now;
+            if (full - now > toleranceMs) {
+                return full - toleranceMs - now;
+            }
+            if (slots.compareAndSet(slot, current, fingerprint << TIME_BITS | (full + intervalMs) & TIME_MASK)) {
+                if (!found && (current & TIME_MASK) > now) {
+                    evictions.increment();
+                }
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Active buckets dropped to make room for another key, which resets their limit.
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public long sizeInBytes() {
+        return (long) slots.length() * Long.BYTES;
+    }
+
+    private long now() {
+        return (System.nanoTime() - epochNanos) / 1_000_000;
+    }
+
+    // Seeded 64-bit FNV-1a followed by a murmur3 finalizer, as in BloomFilter
+    private long hash(String key) {
+        long h = 0xcbf29ce484222325L ^ seed;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}